@@ -0,0 +1,237 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import org.objectweb.asm.idea.config.GroovyCodeStyle;
+import reloc.org.objectweb.asm.ClassReader;
+import reloc.org.objectweb.asm.ClassVisitor;
+import reloc.org.objectweb.asm.FieldVisitor;
+import reloc.org.objectweb.asm.MethodVisitor;
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.tree.ClassNode;
+import reloc.org.objectweb.asm.util.TraceClassVisitor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Compares the three {@link ClassReader} traversals the plugin used to do with the single fan-out traversal of
+ * {@link BytecodeRenderer}, over every class of a jar (by default the bundled ASM jar). Before timing, it checks that
+ * both, as well as the replay of a parsed class model, produce the same text for every combination of flags.
+ * <p/>
+ * Usage: <code>FanOutRenderingBenchmark [jar] [iterations]</code>
+ */
+public class FanOutRenderingBenchmark {
+    private static final int[] FLAGS = {
+            0,
+            ClassReader.SKIP_DEBUG,
+            ClassReader.SKIP_FRAMES,
+            ClassReader.EXPAND_FRAMES,
+            ClassReader.SKIP_CODE,
+            ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES,
+            ClassReader.SKIP_DEBUG | ClassReader.EXPAND_FRAMES,
+            ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG
+    };
+
+    public static void main(String[] args) throws IOException {
+        final String jar = args.length > 0 ? args[0] : "lib/reloc-asm-all-5.0.3.jar";
+        final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final List<byte[]> corpus = loadClasses(jar);
+        System.out.println("Loaded " + corpus.size() + " classes from " + jar);
+
+        int mismatches = 0;
+        for (int flags : FLAGS) {
+            for (GroovyCodeStyle codeStyle : GroovyCodeStyle.values()) {
+                for (byte[] bytes : corpus) {
+                    final String[] expected = renderSeparately(bytes, flags, codeStyle);
+                    final Map<BytecodeRenderer.View, String> actual = renderFanOut(bytes, flags, codeStyle);
+                    final Map<BytecodeRenderer.View, String> replayed = renderModel(bytes, flags, codeStyle);
+                    for (Map<BytecodeRenderer.View, String> views : new Map[]{actual, replayed}) {
+                        if (!expected[0].equals(views.get(BytecodeRenderer.View.BYTECODE))
+                                || !expected[1].equals(views.get(BytecodeRenderer.View.GROOVIFIED))
+                                || !expected[2].equals(views.get(BytecodeRenderer.View.ASMIFIED))) {
+                            mismatches++;
+                        }
+                    }
+                }
+            }
+        }
+        System.out.println("Output mismatches: " + mismatches);
+
+        for (int i = 0; i < iterations; i++) {
+            runSeparately(corpus);
+            runFanOut(corpus);
+        }
+        long separately = 0;
+        long fanOut = 0;
+        long visitSeparately = 0;
+        long visitFanOut = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            runSeparately(corpus);
+            separately += System.nanoTime() - start;
+            start = System.nanoTime();
+            runFanOut(corpus);
+            fanOut += System.nanoTime() - start;
+            start = System.nanoTime();
+            visitSeparately(corpus);
+            visitSeparately += System.nanoTime() - start;
+            start = System.nanoTime();
+            visitFanOut(corpus);
+            visitFanOut += System.nanoTime() - start;
+        }
+        System.out.printf("Parse and visit, three traversals: %.2f ms/corpus%n", visitSeparately / 1e6 / iterations);
+        System.out.printf("Parse and visit, fan-out traversal: %.2f ms/corpus%n", visitFanOut / 1e6 / iterations);
+        System.out.printf("Full rendering, three traversals: %.2f ms/corpus%n", separately / 1e6 / iterations);
+        System.out.printf("Full rendering, fan-out traversal: %.2f ms/corpus%n", fanOut / 1e6 / iterations);
+    }
+
+    /**
+     * Parses and visits the classes three times, without printing anything.
+     */
+    private static void visitSeparately(final List<byte[]> corpus) {
+        for (byte[] bytes : corpus) {
+            final ClassReader reader = new ClassReader(bytes);
+            reader.accept(new NullClassVisitor(), 0);
+            reader.accept(new NullClassVisitor(), BytecodeRenderer.GROOVIFIED_FLAGS);
+            reader.accept(new NullClassVisitor(), 0);
+        }
+    }
+
+    /**
+     * Parses and visits the classes once, fanning out to three visitors which don't print anything.
+     */
+    private static void visitFanOut(final List<byte[]> corpus) {
+        for (byte[] bytes : corpus) {
+            new ClassReader(bytes).accept(new FanOutClassVisitor(
+                    new NullClassVisitor(),
+                    new ReaderFlagsFilter(new NullClassVisitor(), 0, BytecodeRenderer.GROOVIFIED_FLAGS),
+                    new NullClassVisitor()), 0);
+        }
+    }
+
+    private static void runSeparately(final List<byte[]> corpus) {
+        for (byte[] bytes : corpus) {
+            renderSeparately(bytes, 0, GroovyCodeStyle.GROOVIFIER_0_2_0);
+        }
+    }
+
+    private static void runFanOut(final List<byte[]> corpus) {
+        for (byte[] bytes : corpus) {
+            renderFanOut(bytes, 0, GroovyCodeStyle.GROOVIFIER_0_2_0);
+        }
+    }
+
+    /**
+     * Renders the three views the way the plugin did before the fan-out traversal.
+     */
+    private static String[] renderSeparately(final byte[] bytes, final int flags, final GroovyCodeStyle codeStyle) {
+        final ClassReader reader = new ClassReader(bytes);
+        final StringWriter stringWriter = new StringWriter();
+        reader.accept(new TraceClassVisitor(new PrintWriter(stringWriter)), flags);
+        final String bytecode = stringWriter.toString();
+        stringWriter.getBuffer().setLength(0);
+        reader.accept(new TraceClassVisitor(null, new GroovifiedTextifier(codeStyle), new PrintWriter(stringWriter)), ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG);
+        final String groovified = stringWriter.toString();
+        stringWriter.getBuffer().setLength(0);
+        reader.accept(new TraceClassVisitor(null, new IndentingASMifier(BytecodeRenderer.DEFAULT_INDENT), new PrintWriter(stringWriter)), flags);
+        return new String[]{bytecode, groovified, stringWriter.toString()};
+    }
+
+    private static Map<BytecodeRenderer.View, String> renderFanOut(final byte[] bytes, final int flags, final GroovyCodeStyle codeStyle) {
+        return new BytecodeRenderer(flags, codeStyle).render(bytes, EnumSet.allOf(BytecodeRenderer.View.class));
+    }
+
+    /**
+     * Renders the three views by replaying a class model parsed once, the way the plugin does for displayed files.
+     */
+    private static Map<BytecodeRenderer.View, String> renderModel(final byte[] bytes, final int flags, final GroovyCodeStyle codeStyle) {
+        final BytecodeRenderer renderer = new BytecodeRenderer(flags, codeStyle);
+        final ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, renderer.getModelFlags());
+        final Map<BytecodeRenderer.View, TextBuffer> buffers = renderer.renderText(node, renderer.getModelFlags(), EnumSet.allOf(BytecodeRenderer.View.class), null);
+        final Map<BytecodeRenderer.View, String> views = new EnumMap<BytecodeRenderer.View, String>(BytecodeRenderer.View.class);
+        for (Map.Entry<BytecodeRenderer.View, TextBuffer> entry : buffers.entrySet()) {
+            views.put(entry.getKey(), entry.getValue().toString());
+        }
+        return views;
+    }
+
+    /**
+     * Receives every event of a class without doing anything with it.
+     */
+    private static class NullClassVisitor extends ClassVisitor {
+        private NullClassVisitor() {
+            super(Opcodes.ASM5);
+        }
+
+        @Override
+        public FieldVisitor visitField(final int access, final String name, final String desc, final String signature, final Object value) {
+            return new FieldVisitor(Opcodes.ASM5) {
+            };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+            return new MethodVisitor(Opcodes.ASM5) {
+            };
+        }
+    }
+
+    /**
+     * Reads every class file of a jar.
+     */
+    static List<byte[]> loadClasses(final String jar) throws IOException {
+        final List<byte[]> classes = new ArrayList<byte[]>();
+        final ZipFile zip = new ZipFile(jar);
+        try {
+            final Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                final ZipEntry entry = entries.nextElement();
+                if (!entry.getName().endsWith(".class")) continue;
+                final InputStream in = zip.getInputStream(entry);
+                try {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final byte[] buffer = new byte[8192];
+                    int read;
+                    while ((read = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, read);
+                    }
+                    classes.add(out.toByteArray());
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            zip.close();
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import org.objectweb.asm.idea.config.GroovyCodeStyle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reloc.org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the printers behind each view, the way the plugin drives them through {@link BytecodeRenderer}, for
+ * each combination of the {@link ClassReader} flags which can be selected in the settings. The Groovified view always
+ * uses {@link BytecodeRenderer#GROOVIFIED_FLAGS}, so its results only vary with the code style. One operation renders
+ * one class of the corpus, the classes being taken in turn, so that the normalized allocation rate reported by the gc
+ * profiler reads as bytes allocated per class. The corpus is the bundled ASM jar, unless the <code>corpus</code>
+ * system property names another jar.
+ * <p/>
+ * Usage: <code>PrinterBenchmark</code>, or any JMH runner with <code>-prof gc</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrinterBenchmark {
+    /**
+     * The printer to run: a view, or ALL for the three views fed by a single traversal.
+     */
+    @Param({"BYTECODE", "GROOVIFIED", "ASMIFIED", "ALL"})
+    public String printer;
+
+    /**
+     * The reader flags selected in the settings, separated by '|'.
+     */
+    @Param({"NONE", "SKIP_DEBUG", "SKIP_FRAMES", "EXPAND_FRAMES", "SKIP_CODE", "SKIP_DEBUG|SKIP_FRAMES", "SKIP_DEBUG|EXPAND_FRAMES"})
+    public String flags;
+
+    @Param({"LEGACY", "GROOVIFIER_0_2_0"})
+    public String codeStyle;
+
+    private List<byte[]> corpus;
+    private BytecodeRenderer renderer;
+    private Set<BytecodeRenderer.View> views;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        corpus = FanOutRenderingBenchmark.loadClasses(System.getProperty("corpus", "lib/reloc-asm-all-5.0.3.jar"));
+        renderer = new BytecodeRenderer(parseFlags(flags), GroovyCodeStyle.valueOf(codeStyle));
+        views = "ALL".equals(printer) ? EnumSet.allOf(BytecodeRenderer.View.class) : EnumSet.of(BytecodeRenderer.View.valueOf(printer));
+        next = 0;
+    }
+
+    @Benchmark
+    public Map<BytecodeRenderer.View, String> render() {
+        final byte[] bytes = corpus.get(next);
+        next = (next + 1) % corpus.size();
+        return renderer.render(bytes, views);
+    }
+
+    private static int parseFlags(final String names) {
+        int result = 0;
+        for (String name : names.split("\\|")) {
+            if ("SKIP_DEBUG".equals(name)) result |= ClassReader.SKIP_DEBUG;
+            else if ("SKIP_FRAMES".equals(name)) result |= ClassReader.SKIP_FRAMES;
+            else if ("EXPAND_FRAMES".equals(name)) result |= ClassReader.EXPAND_FRAMES;
+            else if ("SKIP_CODE".equals(name)) result |= ClassReader.SKIP_CODE;
+            else if (!"NONE".equals(name)) throw new IllegalArgumentException("Unknown reader flag: " + name);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PrinterBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,330 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import org.objectweb.asm.idea.config.GroovyCodeStyle;
+import reloc.org.objectweb.asm.ClassReader;
+import reloc.org.objectweb.asm.ClassVisitor;
+import reloc.org.objectweb.asm.MethodVisitor;
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.tree.ClassNode;
+import reloc.org.objectweb.asm.util.Printer;
+import reloc.org.objectweb.asm.util.Textifier;
+import reloc.org.objectweb.asm.util.TraceClassVisitor;
+import reloc.org.objectweb.asm.util.TraceMethodVisitor;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders the textual views of a class file. All the requested views are fed from a single {@link ClassReader}
+ * traversal, through a {@link FanOutClassVisitor}, each branch being filtered by a {@link ReaderFlagsFilter} when its
+ * flags are stricter than the ones the class is read with. The same visitors can replay a class which has already been
+ * parsed into a {@link ClassNode}, provided it has been parsed with the flags returned by {@link #getModelFlags()}.
+ * <p/>
+ * The renderer only depends on ASM, so that it can be used outside of the IDE, for example by benchmarks or batch
+ * tools. The plugin adapts it to the settings and files of a project, see <code>RenderTask</code>.
+ */
+public class BytecodeRenderer {
+    /**
+     * The Groovified view never needs debug information nor frames.
+     */
+    public static final int GROOVIFIED_FLAGS = ClassReader.SKIP_FRAMES | ClassReader.SKIP_DEBUG;
+
+    public enum View {
+        BYTECODE,
+        GROOVIFIED,
+        ASMIFIED
+    }
+
+    /**
+     * The indentation used for ASMified code when none is given.
+     */
+    public static final String DEFAULT_INDENT = "    ";
+
+    private final int flags;
+    private final GroovyCodeStyle codeStyle;
+    private final String indent;
+    private final boolean lazyMethods;
+
+    /**
+     * @param flags     the {@link ClassReader} flags used for the bytecode and ASMified views
+     * @param codeStyle the code style of the Groovified view
+     */
+    public BytecodeRenderer(final int flags, final GroovyCodeStyle codeStyle) {
+        this(flags, codeStyle, DEFAULT_INDENT);
+    }
+
+    /**
+     * @param flags     the {@link ClassReader} flags used for the bytecode and ASMified views
+     * @param codeStyle the code style of the Groovified view
+     * @param indent    the string used for each indentation level of the ASMified view
+     */
+    public BytecodeRenderer(final int flags, final GroovyCodeStyle codeStyle, final String indent) {
+        this(flags, codeStyle, indent, false);
+    }
+
+    /**
+     * @param flags       the {@link ClassReader} flags used for the bytecode and ASMified views
+     * @param codeStyle   the code style of the Groovified view
+     * @param indent      the string used for each indentation level of the ASMified view
+     * @param lazyMethods if true, the bytecode view is rendered as a skeleton, the code of each method being replaced
+     *                    by a stub which can be rendered later with {@link #renderMethodCode(byte[], String)}
+     */
+    public BytecodeRenderer(final int flags, final GroovyCodeStyle codeStyle, final String indent, final boolean lazyMethods) {
+        this.flags = flags;
+        this.codeStyle = codeStyle;
+        this.indent = indent;
+        this.lazyMethods = lazyMethods && (flags & ClassReader.SKIP_CODE) == 0;
+    }
+
+    public GroovyCodeStyle getCodeStyle() {
+        return codeStyle;
+    }
+
+    public String getIndent() {
+        return indent;
+    }
+
+    public boolean isLazyMethods() {
+        return lazyMethods;
+    }
+
+    public int getFlags(final View view) {
+        switch (view) {
+            case GROOVIFIED:
+                return GROOVIFIED_FLAGS;
+            case BYTECODE:
+                return lazyMethods ? flags | ClassReader.SKIP_CODE : flags;
+            default:
+                return flags;
+        }
+    }
+
+    /**
+     * Renders the given views of a class in one traversal.
+     *
+     * @param bytes the class file contents
+     * @param views the views to render
+     * @return the text of each view
+     */
+    public Map<View, String> render(final byte[] bytes, final Set<View> views) {
+        return render(bytes, views, null);
+    }
+
+    /**
+     * Renders the given views of a class, or of one of its methods, in one traversal.
+     *
+     * @param bytes the class file contents
+     * @param views the views to render
+     * @param scope null to render the whole class, else the method to render, see {@link MethodFilter}
+     * @return the text of each view
+     */
+    public Map<View, String> render(final byte[] bytes, final Set<View> views, final String scope) {
+        final Map<View, String> result = new EnumMap<View, String>(View.class);
+        for (Map.Entry<View, TextBuffer> entry : renderText(bytes, views, scope).entrySet()) {
+            result.put(entry.getKey(), entry.getValue().toString());
+        }
+        return result;
+    }
+
+    /**
+     * Renders the given views of a class, or of one of its methods, in one traversal. The printers write straight into
+     * the returned buffers, so that the text of a view is not copied on its way to an editor or a file.
+     *
+     * @param bytes the class file contents
+     * @param views the views to render
+     * @param scope null to render the whole class, else the method to render, see {@link MethodFilter}
+     * @return the text of each view
+     */
+    public Map<View, TextBuffer> renderText(final byte[] bytes, final Set<View> views, final String scope) {
+        final View[] kinds = views.toArray(new View[views.size()]);
+        final int[] viewFlags = getFlags(kinds);
+        final int readerFlags = ReaderFlagsFilter.readerFlags(viewFlags);
+        final TextBuffer[] buffers = new TextBuffer[kinds.length];
+        new ClassReader(bytes).accept(decorate(createVisitor(kinds, viewFlags, readerFlags, buffers, scope)), readerFlags);
+        return toMap(kinds, buffers);
+    }
+
+    /**
+     * Renders the given views of a class, or of one of its methods, from a class which has already been parsed, for
+     * example by a cache of class models.
+     *
+     * @param node      the parsed class, see {@link #getModelFlags()}
+     * @param nodeFlags the {@link ClassReader} flags the class has been parsed with
+     * @param views     the views to render
+     * @param scope     null to render the whole class, else the method to render, see {@link MethodFilter}
+     * @return the text of each view
+     * @throws IllegalArgumentException if the views can't be rendered from a class parsed with these flags
+     */
+    public Map<View, TextBuffer> renderText(final ClassNode node, final int nodeFlags, final Set<View> views, final String scope) {
+        final View[] kinds = views.toArray(new View[views.size()]);
+        final int[] viewFlags = getFlags(kinds);
+        for (int f : viewFlags) {
+            if (!ReaderFlagsFilter.canEmulate(nodeFlags, f)) {
+                throw new IllegalArgumentException("Can't render a class parsed with flags " + nodeFlags + " as if read with " + f);
+            }
+        }
+        final TextBuffer[] buffers = new TextBuffer[kinds.length];
+        accept(node, decorate(createVisitor(kinds, viewFlags, nodeFlags, buffers, scope)));
+        return toMap(kinds, buffers);
+    }
+
+    /**
+     * Returns the flags a class must be parsed with so that every view, and the code of every method, can be rendered
+     * from the same {@link ClassNode}. Debug information and frames are kept unless the settings skip only one of them,
+     * which {@link ReaderFlagsFilter} can't emulate, and the code is always kept because the Groovified view needs it.
+     */
+    public int getModelFlags() {
+        final int modelFlags = flags & ClassReader.EXPAND_FRAMES;
+        return ReaderFlagsFilter.canEmulate(modelFlags, flags) ? modelFlags : flags & ~ClassReader.SKIP_CODE;
+    }
+
+    /**
+     * Renders the code of one method the way it appears in the bytecode view, without its header nor annotations, which
+     * are part of the skeleton printed by a {@link SkeletonTextifier}.
+     *
+     * @param bytes  the class file contents
+     * @param method the name of the method followed by its descriptor
+     * @return the code of the method, or an empty string if the class has no such method
+     */
+    public String renderMethodCode(final byte[] bytes, final String method) {
+        final MethodCodeFilter filter = new MethodCodeFilter(method);
+        new ClassReader(bytes).accept(decorate(filter), flags);
+        return filter.print();
+    }
+
+    /**
+     * Renders the code of one method from a class which has already been parsed, see
+     * {@link #renderMethodCode(byte[], String)}.
+     *
+     * @param node      the parsed class, see {@link #getModelFlags()}
+     * @param nodeFlags the {@link ClassReader} flags the class has been parsed with
+     * @param method    the name of the method followed by its descriptor
+     * @return the code of the method, or an empty string if the class has no such method
+     * @throws IllegalArgumentException if the code can't be rendered from a class parsed with these flags
+     */
+    public String renderMethodCode(final ClassNode node, final int nodeFlags, final String method) {
+        if (!ReaderFlagsFilter.canEmulate(nodeFlags, flags)) {
+            throw new IllegalArgumentException("Can't render a class parsed with flags " + nodeFlags + " as if read with " + flags);
+        }
+        final MethodCodeFilter filter = new MethodCodeFilter(method);
+        final ClassVisitor visitor = ReaderFlagsFilter.isFilterNeeded(nodeFlags, flags) ? new ReaderFlagsFilter(filter, nodeFlags, flags) : filter;
+        accept(node, decorate(visitor));
+        return filter.print();
+    }
+
+    /**
+     * Hook allowing subclasses to wrap the visitor which receives the events of the class reader.
+     */
+    protected ClassVisitor decorate(final ClassVisitor visitor) {
+        return visitor;
+    }
+
+    private int[] getFlags(final View[] kinds) {
+        final int[] viewFlags = new int[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            viewFlags[i] = getFlags(kinds[i]);
+        }
+        return viewFlags;
+    }
+
+    /**
+     * Creates the printers of the given views, each one writing into a new buffer, and the visitor which feeds them
+     * from a class read with the given flags.
+     */
+    private ClassVisitor createVisitor(final View[] kinds, final int[] viewFlags, final int readerFlags, final TextBuffer[] buffers, final String scope) {
+        final ClassVisitor[] visitors = new ClassVisitor[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            buffers[i] = kinds[i] == View.BYTECODE ? new BytecodeTextBuffer() : new TextBuffer();
+            ClassVisitor visitor = new TraceClassVisitor(null, createPrinter(kinds[i]), new PrintWriter(buffers[i]));
+            if (ReaderFlagsFilter.isFilterNeeded(readerFlags, viewFlags[i])) visitor = new ReaderFlagsFilter(visitor, readerFlags, viewFlags[i]);
+            visitors[i] = visitor;
+        }
+        final ClassVisitor root = visitors.length == 1 ? visitors[0] : new FanOutClassVisitor(visitors);
+        return scope == null ? root : new MethodFilter(root, scope);
+    }
+
+    private static Map<View, TextBuffer> toMap(final View[] kinds, final TextBuffer[] buffers) {
+        final Map<View, TextBuffer> result = new EnumMap<View, TextBuffer>(View.class);
+        for (int i = 0; i < kinds.length; i++) {
+            buffers[i].trimToSize();
+            result.put(kinds[i], buffers[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Replays a parsed class. Replaying resets the labels of the instructions, so concurrent replays of the same class
+     * are serialized.
+     */
+    private static void accept(final ClassNode node, final ClassVisitor visitor) {
+        synchronized (node) {
+            node.accept(visitor);
+        }
+    }
+
+    private Printer createPrinter(final View view) {
+        switch (view) {
+            case GROOVIFIED:
+                return new GroovifiedTextifier(codeStyle);
+            case ASMIFIED:
+                return new IndentingASMifier(indent);
+            default:
+                return lazyMethods ? new SkeletonTextifier() : new Textifier();
+        }
+    }
+
+    /**
+     * Prints the code of a single method. The events which come before {@link MethodVisitor#visitCode()}, such as
+     * annotations, are dropped.
+     */
+    private static class MethodCodeFilter extends ClassVisitor {
+        private final String method;
+        private final Textifier printer = new Textifier();
+
+        private MethodCodeFilter(final String method) {
+            super(Opcodes.ASM5);
+            this.method = method;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+            if (!method.equals(name + desc)) return null;
+            return new MethodVisitor(Opcodes.ASM5) {
+                @Override
+                public void visitCode() {
+                    mv = new TraceMethodVisitor(printer);
+                    super.visitCode();
+                }
+            };
+        }
+
+        private String print() {
+            final StringWriter writer = new StringWriter();
+            final PrintWriter printWriter = new PrintWriter(writer);
+            printer.print(printWriter);
+            printWriter.flush();
+            return writer.toString();
+        }
+    }
+}
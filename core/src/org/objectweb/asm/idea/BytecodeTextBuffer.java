@@ -0,0 +1,87 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The text of a bytecode view, which is looked through line by line while it is written, so that the view gets the
+ * method stubs of a skeleton and the line number index without searching its text for them.
+ */
+public class BytecodeTextBuffer extends TextBuffer {
+    private final List<SkeletonTextifier.Stub> stubs = new ArrayList<SkeletonTextifier.Stub>();
+    private final LineNumberIndex.Builder lineNumbers = new LineNumberIndex.Builder();
+    // offset of the start of the line being written
+    private int lineStart;
+    // built once the text has been written
+    private LineNumberIndex lineNumberIndex;
+
+    @Override
+    public void write(final int c) {
+        super.write(c);
+        if (c == '\n') endLine(length() - 1);
+    }
+
+    @Override
+    public void write(final char[] cbuf, final int off, final int len) {
+        final int start = length();
+        super.write(cbuf, off, len);
+        for (int i = 0; i < len; i++) {
+            if (cbuf[off + i] == '\n') endLine(start + i);
+        }
+    }
+
+    @Override
+    public void write(final String str, final int off, final int len) {
+        final int start = length();
+        super.write(str, off, len);
+        for (int i = 0; i < len; i++) {
+            if (str.charAt(off + i) == '\n') endLine(start + i);
+        }
+    }
+
+    /**
+     * @return the method stubs printed by a {@link SkeletonTextifier}, in the order of the text
+     */
+    public List<SkeletonTextifier.Stub> getStubs() {
+        return Collections.unmodifiableList(stubs);
+    }
+
+    /**
+     * Must only be called once the text has been written.
+     *
+     * @return the index linking source lines to the blocks of the text
+     */
+    public synchronized LineNumberIndex getLineNumbers() {
+        if (lineNumberIndex == null) {
+            if (lineStart < length()) endLine(length());
+            lineNumberIndex = lineNumbers.build(length());
+        }
+        return lineNumberIndex;
+    }
+
+    private void endLine(final int end) {
+        final SkeletonTextifier.Stub stub = SkeletonTextifier.parseStub(this, lineStart, end);
+        if (stub != null) stubs.add(stub);
+        lineNumbers.line(this, lineStart, end);
+        lineStart = end + 1;
+    }
+}
@@ -0,0 +1,481 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import reloc.org.objectweb.asm.AnnotationVisitor;
+import reloc.org.objectweb.asm.Attribute;
+import reloc.org.objectweb.asm.ClassVisitor;
+import reloc.org.objectweb.asm.FieldVisitor;
+import reloc.org.objectweb.asm.Handle;
+import reloc.org.objectweb.asm.Label;
+import reloc.org.objectweb.asm.MethodVisitor;
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.TypePath;
+
+/**
+ * A class visitor which forwards every event it receives to several class visitors, so that a single
+ * {@link reloc.org.objectweb.asm.ClassReader} traversal can feed all the printers of the tool window. Labels and
+ * attributes are shared between the branches, which is fine for printers since they only use them as keys.
+ */
+public class FanOutClassVisitor extends ClassVisitor {
+    private final ClassVisitor[] cvs;
+
+    public FanOutClassVisitor(final ClassVisitor... cvs) {
+        super(Opcodes.ASM5);
+        this.cvs = cvs;
+    }
+
+    @Override
+    public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
+        for (ClassVisitor cv : cvs) {
+            cv.visit(version, access, name, signature, superName, interfaces);
+        }
+    }
+
+    @Override
+    public void visitSource(final String source, final String debug) {
+        for (ClassVisitor cv : cvs) {
+            cv.visitSource(source, debug);
+        }
+    }
+
+    @Override
+    public void visitOuterClass(final String owner, final String name, final String desc) {
+        for (ClassVisitor cv : cvs) {
+            cv.visitOuterClass(owner, name, desc);
+        }
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+        final AnnotationVisitor[] avs = new AnnotationVisitor[cvs.length];
+        for (int i = 0; i < cvs.length; i++) {
+            avs[i] = cvs[i].visitAnnotation(desc, visible);
+        }
+        return FanOutAnnotationVisitor.of(avs);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+        final AnnotationVisitor[] avs = new AnnotationVisitor[cvs.length];
+        for (int i = 0; i < cvs.length; i++) {
+            avs[i] = cvs[i].visitTypeAnnotation(typeRef, typePath, desc, visible);
+        }
+        return FanOutAnnotationVisitor.of(avs);
+    }
+
+    @Override
+    public void visitAttribute(final Attribute attr) {
+        for (ClassVisitor cv : cvs) {
+            cv.visitAttribute(attr);
+        }
+    }
+
+    @Override
+    public void visitInnerClass(final String name, final String outerName, final String innerName, final int access) {
+        for (ClassVisitor cv : cvs) {
+            cv.visitInnerClass(name, outerName, innerName, access);
+        }
+    }
+
+    @Override
+    public FieldVisitor visitField(final int access, final String name, final String desc, final String signature, final Object value) {
+        final FieldVisitor[] fvs = new FieldVisitor[cvs.length];
+        for (int i = 0; i < cvs.length; i++) {
+            fvs[i] = cvs[i].visitField(access, name, desc, signature, value);
+        }
+        return FanOutFieldVisitor.of(fvs);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+        final MethodVisitor[] mvs = new MethodVisitor[cvs.length];
+        for (int i = 0; i < cvs.length; i++) {
+            mvs[i] = cvs[i].visitMethod(access, name, desc, signature, exceptions);
+        }
+        return FanOutMethodVisitor.of(mvs);
+    }
+
+    @Override
+    public void visitEnd() {
+        for (ClassVisitor cv : cvs) {
+            cv.visitEnd();
+        }
+    }
+
+    /**
+     * Counts the non null visitors of the given array, moving them at the beginning of the array.
+     */
+    private static int compact(final Object[] visitors) {
+        int count = 0;
+        for (Object visitor : visitors) {
+            if (visitor != null) visitors[count++] = visitor;
+        }
+        return count;
+    }
+
+    private static class FanOutAnnotationVisitor extends AnnotationVisitor {
+        private final AnnotationVisitor[] avs;
+
+        private FanOutAnnotationVisitor(final AnnotationVisitor[] avs) {
+            super(Opcodes.ASM5);
+            this.avs = avs;
+        }
+
+        static AnnotationVisitor of(final AnnotationVisitor[] avs) {
+            final int count = compact(avs);
+            if (count == 0) return null;
+            if (count == 1) return avs[0];
+            final AnnotationVisitor[] result = new AnnotationVisitor[count];
+            System.arraycopy(avs, 0, result, 0, count);
+            return new FanOutAnnotationVisitor(result);
+        }
+
+        @Override
+        public void visit(final String name, final Object value) {
+            for (AnnotationVisitor av : avs) {
+                av.visit(name, value);
+            }
+        }
+
+        @Override
+        public void visitEnum(final String name, final String desc, final String value) {
+            for (AnnotationVisitor av : avs) {
+                av.visitEnum(name, desc, value);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String name, final String desc) {
+            final AnnotationVisitor[] result = new AnnotationVisitor[avs.length];
+            for (int i = 0; i < avs.length; i++) {
+                result[i] = avs[i].visitAnnotation(name, desc);
+            }
+            return of(result);
+        }
+
+        @Override
+        public AnnotationVisitor visitArray(final String name) {
+            final AnnotationVisitor[] result = new AnnotationVisitor[avs.length];
+            for (int i = 0; i < avs.length; i++) {
+                result[i] = avs[i].visitArray(name);
+            }
+            return of(result);
+        }
+
+        @Override
+        public void visitEnd() {
+            for (AnnotationVisitor av : avs) {
+                av.visitEnd();
+            }
+        }
+    }
+
+    private static class FanOutFieldVisitor extends FieldVisitor {
+        private final FieldVisitor[] fvs;
+
+        private FanOutFieldVisitor(final FieldVisitor[] fvs) {
+            super(Opcodes.ASM5);
+            this.fvs = fvs;
+        }
+
+        static FieldVisitor of(final FieldVisitor[] fvs) {
+            final int count = compact(fvs);
+            if (count == 0) return null;
+            if (count == 1) return fvs[0];
+            final FieldVisitor[] result = new FieldVisitor[count];
+            System.arraycopy(fvs, 0, result, 0, count);
+            return new FanOutFieldVisitor(result);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[fvs.length];
+            for (int i = 0; i < fvs.length; i++) {
+                avs[i] = fvs[i].visitAnnotation(desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[fvs.length];
+            for (int i = 0; i < fvs.length; i++) {
+                avs[i] = fvs[i].visitTypeAnnotation(typeRef, typePath, desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public void visitAttribute(final Attribute attr) {
+            for (FieldVisitor fv : fvs) {
+                fv.visitAttribute(attr);
+            }
+        }
+
+        @Override
+        public void visitEnd() {
+            for (FieldVisitor fv : fvs) {
+                fv.visitEnd();
+            }
+        }
+    }
+
+    private static class FanOutMethodVisitor extends MethodVisitor {
+        private final MethodVisitor[] mvs;
+
+        private FanOutMethodVisitor(final MethodVisitor[] mvs) {
+            super(Opcodes.ASM5);
+            this.mvs = mvs;
+        }
+
+        static MethodVisitor of(final MethodVisitor[] mvs) {
+            final int count = compact(mvs);
+            if (count == 0) return null;
+            if (count == 1) return mvs[0];
+            final MethodVisitor[] result = new MethodVisitor[count];
+            System.arraycopy(mvs, 0, result, 0, count);
+            return new FanOutMethodVisitor(result);
+        }
+
+        @Override
+        public void visitParameter(final String name, final int access) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitParameter(name, access);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[mvs.length];
+            for (int i = 0; i < mvs.length; i++) {
+                avs[i] = mvs[i].visitAnnotationDefault();
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[mvs.length];
+            for (int i = 0; i < mvs.length; i++) {
+                avs[i] = mvs[i].visitAnnotation(desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[mvs.length];
+            for (int i = 0; i < mvs.length; i++) {
+                avs[i] = mvs[i].visitTypeAnnotation(typeRef, typePath, desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(final int parameter, final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[mvs.length];
+            for (int i = 0; i < mvs.length; i++) {
+                avs[i] = mvs[i].visitParameterAnnotation(parameter, desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public void visitAttribute(final Attribute attr) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitAttribute(attr);
+            }
+        }
+
+        @Override
+        public void visitCode() {
+            for (MethodVisitor mv : mvs) {
+                mv.visitCode();
+            }
+        }
+
+        @Override
+        public void visitFrame(final int type, final int nLocal, final Object[] local, final int nStack, final Object[] stack) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitFrame(type, nLocal, local, nStack, stack);
+            }
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitInsn(opcode);
+            }
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitIntInsn(opcode, operand);
+            }
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int var) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitVarInsn(opcode, var);
+            }
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitTypeInsn(opcode, type);
+            }
+        }
+
+        @Override
+        public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitFieldInsn(opcode, owner, name, desc);
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitMethodInsn(opcode, owner, name, desc, itf);
+            }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(final String name, final String desc, final Handle bsm, final Object... bsmArgs) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+            }
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitJumpInsn(opcode, label);
+            }
+        }
+
+        @Override
+        public void visitLabel(final Label label) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitLabel(label);
+            }
+        }
+
+        @Override
+        public void visitLdcInsn(final Object cst) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitLdcInsn(cst);
+            }
+        }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitIincInsn(var, increment);
+            }
+        }
+
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitTableSwitchInsn(min, max, dflt, labels);
+            }
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitLookupSwitchInsn(dflt, keys, labels);
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String desc, final int dims) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitMultiANewArrayInsn(desc, dims);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[mvs.length];
+            for (int i = 0; i < mvs.length; i++) {
+                avs[i] = mvs[i].visitInsnAnnotation(typeRef, typePath, desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public void visitTryCatchBlock(final Label start, final Label end, final Label handler, final String type) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitTryCatchBlock(start, end, handler, type);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitTryCatchAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[mvs.length];
+            for (int i = 0; i < mvs.length; i++) {
+                avs[i] = mvs[i].visitTryCatchAnnotation(typeRef, typePath, desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public void visitLocalVariable(final String name, final String desc, final String signature, final Label start, final Label end, final int index) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitLocalVariable(name, desc, signature, start, end, index);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitLocalVariableAnnotation(final int typeRef, final TypePath typePath, final Label[] start, final Label[] end, final int[] index, final String desc, final boolean visible) {
+            final AnnotationVisitor[] avs = new AnnotationVisitor[mvs.length];
+            for (int i = 0; i < mvs.length; i++) {
+                avs[i] = mvs[i].visitLocalVariableAnnotation(typeRef, typePath, start, end, index, desc, visible);
+            }
+            return FanOutAnnotationVisitor.of(avs);
+        }
+
+        @Override
+        public void visitLineNumber(final int line, final Label start) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitLineNumber(line, start);
+            }
+        }
+
+        @Override
+        public void visitMaxs(final int maxStack, final int maxLocals) {
+            for (MethodVisitor mv : mvs) {
+                mv.visitMaxs(maxStack, maxLocals);
+            }
+        }
+
+        @Override
+        public void visitEnd() {
+            for (MethodVisitor mv : mvs) {
+                mv.visitEnd();
+            }
+        }
+    }
+}
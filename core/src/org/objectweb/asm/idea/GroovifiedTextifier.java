@@ -24,18 +24,18 @@ package org.objectweb.asm.idea;
  * Time: 22:07
  */
 
-import org.objectweb.asm.*;
 import reloc.org.objectweb.asm.*;
 import reloc.org.objectweb.asm.Label;
 import reloc.org.objectweb.asm.Opcodes;
 import reloc.org.objectweb.asm.Type;
-import reloc.org.objectweb.asm.commons.Method;
 import org.objectweb.asm.idea.config.GroovyCodeStyle;
 import reloc.org.objectweb.asm.util.*;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A customized trace visitor which outputs code compatible with the Groovy @groovyx.ast.bytecode.Bytecode AST
@@ -54,7 +54,24 @@ public class GroovifiedTextifier extends Textifier {
 
     private final static String[] ATYPES;
 
+    /**
+     * The lower case mnemonics of the opcodes, see {@link Printer#OPCODES}.
+     */
+    private final static String[] LOWER_OPCODES = new String[OPCODES.length];
+
+    /**
+     * The names of the first labels of a method, so that they aren't built again for each method.
+     */
+    private final static String[] LABEL_NAMES = new String[256];
+
     static {
+        for (int i = 0; i < OPCODES.length; i++) {
+            if (OPCODES[i] != null) LOWER_OPCODES[i] = OPCODES[i].toLowerCase();
+        }
+        for (int i = 0; i < LABEL_NAMES.length; i++) {
+            LABEL_NAMES[i] = "l" + i;
+        }
+
         ATYPES = new String[12];
         String s = "boolean,char,float,double,byte,short,int,long,";
         int j = 0;
@@ -66,7 +83,46 @@ public class GroovifiedTextifier extends Textifier {
         }
     }
 
+    /**
+     * Internal names of classes to their Groovy names.
+     */
+    private final static NameCache CLASS_NAMES = new NameCache() {
+        @Override
+        protected void translate(final StringBuffer buf, final String internalName) {
+            appendGroovyName(buf, internalName, 0, internalName.length());
+        }
+    };
+
+    /**
+     * Type descriptors to the Groovy names of the types.
+     */
+    private final static NameCache TYPE_NAMES = new NameCache() {
+        @Override
+        protected void translate(final StringBuffer buf, final String desc) {
+            appendGroovyType(buf, desc, 0);
+        }
+    };
+
+    /**
+     * Method descriptors to the Groovy form of the signature of a method call, such as <code>(int,String) >> void</code>.
+     */
+    private final static NameCache CALL_SIGNATURES = new NameCache() {
+        @Override
+        protected void translate(final StringBuffer buf, final String desc) {
+            buf.append('(');
+            int i = 1;
+            while (desc.charAt(i) != ')') {
+                if (i > 1) buf.append(',');
+                i = appendGroovyType(buf, desc, i);
+            }
+            buf.append(") >> ");
+            appendGroovyType(buf, desc, i + 1);
+        }
+    };
+
     private final GroovyCodeStyle codeStyle;
+    // the label names of the method being visited, shared by the methods of the class since they are visited in turn
+    private final Map<Label, String> labels = new IdentityHashMap<Label, String>();
 
     public GroovifiedTextifier(final GroovyCodeStyle codeStyle) {
         super( Opcodes.ASM5 );
@@ -74,7 +130,7 @@ public class GroovifiedTextifier extends Textifier {
     }
 
     protected Textifier createTextifier() {
-        return new GroovifiedMethodTextifier(codeStyle);
+        return new GroovifiedMethodTextifier(codeStyle, labels);
     }
 
     @Override
@@ -85,32 +141,29 @@ public class GroovifiedTextifier extends Textifier {
             buf.append(tab).append("// @Deprecated\n");
         }
         buf.append(tab).append("@groovyx.ast.bytecode.Bytecode\n");
-        Method method = new Method(name, desc);
 
         buf.append(tab);
         appendAccess(access);
         if ((access & Opcodes.ACC_NATIVE) != 0) {
             buf.append("native ");
         }
-        buf.append(groovyClassName(method.getReturnType().getClassName()));
+        appendGroovyType(buf, desc, desc.indexOf(')') + 1);
         buf.append(' ');
         buf.append(name);
         buf.append('(');
-        final Type[] argumentTypes = method.getArgumentTypes();
         char arg = 'a';
-        for (int j = 0, argumentTypesLength = argumentTypes.length; j < argumentTypesLength; j++) {
-            final Type type = argumentTypes[j];
-            buf.append(groovyClassName(type.getClassName()));
+        for (int i = 1; desc.charAt(i) != ')'; ) {
+            if (i > 1) buf.append(',');
+            i = appendGroovyType(buf, desc, i);
             buf.append(' ');
             buf.append(arg);
-            if (j < argumentTypesLength - 1) buf.append(',');
             arg++;
         }
         buf.append(')');
         if (exceptions != null && exceptions.length > 0) {
             buf.append(" throws ");
             for (int i = 0; i < exceptions.length; ++i) {
-                appendDescriptor(INTERNAL_NAME, exceptions[i].replace('/', '.'));
+                appendDotted(buf, exceptions[i], 0, exceptions[i].length());
                 if (i < exceptions.length - 1) buf.append(',');
             }
         }
@@ -118,6 +171,7 @@ public class GroovifiedTextifier extends Textifier {
         buf.append('\n');
         text.add(buf.toString());
 
+        labels.clear();
         GroovifiedMethodTextifier tcv = (GroovifiedMethodTextifier) createTextifier();
         text.add(tcv.getText());
         text.add("  }\n");
@@ -165,16 +219,137 @@ public class GroovifiedTextifier extends Textifier {
         }
     }
 
-    private static String groovyClassName(String className) {
+    /**
+     * Appends the Groovy name of a class, which is its Java name without the package when it is imported by default.
+     *
+     * @param buf          the buffer to append to
+     * @param internalName the internal name of a class, such as <code>java/lang/String</code>
+     * @param start        the offset of the internal name in the given string
+     * @param end          the offset following the internal name
+     */
+    private static void appendGroovyName(final StringBuffer buf, final String internalName, int start, final int end) {
         for (String anImport : GROOVY_DEFAULT_IMPORTS) {
-            if (className.startsWith(anImport)) return className.substring(anImport.length());
+            if (end - start >= anImport.length() && regionMatches(internalName, start, anImport)) {
+                start += anImport.length();
+                break;
+            }
         }
-        return className;
+        appendDotted(buf, internalName, start, end);
+    }
+
+    /**
+     * Appends a region of an internal name, replacing '/' with '.'. The name is appended by segments rather than by
+     * characters, since each call to the buffer is synchronized.
+     */
+    private static void appendDotted(final StringBuffer buf, final String internalName, final int start, final int end) {
+        int segment = start;
+        for (int i = start; i < end; i++) {
+            if (internalName.charAt(i) == '/') {
+                buf.append(internalName, segment, i).append('.');
+                segment = i + 1;
+            }
+        }
+        buf.append(internalName, segment, end);
+    }
+
+    /**
+     * Compares a region of an internal name with a package prefix, ignoring the difference between '/' and '.'.
+     */
+    private static boolean regionMatches(final String internalName, final int start, final String prefix) {
+        for (int i = 0; i < prefix.length(); i++) {
+            final char c = internalName.charAt(start + i);
+            if ((c == '/' ? '.' : c) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Appends the Groovy name of the type found at the given offset of a descriptor, as {@link Type#getClassName()}
+     * would name it, without the package when it is imported by default.
+     *
+     * @param buf   the buffer to append to
+     * @param desc  a type or method descriptor
+     * @param start the offset of the type in the descriptor
+     * @return the offset following the type
+     */
+    private static int appendGroovyType(final StringBuffer buf, final String desc, final int start) {
+        int i = start;
+        while (desc.charAt(i) == '[') i++;
+        final int dimensions = i - start;
+        final char c = desc.charAt(i);
+        if (c == 'L') {
+            final int end = desc.indexOf(';', i);
+            appendGroovyName(buf, desc, i + 1, end);
+            i = end;
+        } else {
+            buf.append(primitiveName(c));
+        }
+        for (int j = 0; j < dimensions; j++) {
+            buf.append("[]");
+        }
+        return i + 1;
+    }
+
+    /**
+     * Returns the Groovy name of the owner of a field or method. Methods of arrays, such as <code>clone()</code>, are
+     * owned by an array descriptor rather than by the internal name of a class.
+     */
+    private static String ownerName(final String owner) {
+        return owner.charAt(0) == '[' ? TYPE_NAMES.get(owner) : CLASS_NAMES.get(owner);
+    }
+
+    private static String primitiveName(final char c) {
+        switch (c) {
+            case 'V':
+                return "void";
+            case 'Z':
+                return "boolean";
+            case 'C':
+                return "char";
+            case 'B':
+                return "byte";
+            case 'S':
+                return "short";
+            case 'I':
+                return "int";
+            case 'F':
+                return "float";
+            case 'J':
+                return "long";
+            default:
+                return "double";
+        }
+    }
+
+    /**
+     * Memoizes the translation of names to their Groovy form, which would otherwise be done again for each instruction
+     * referencing a class. The cache is shared by all the renders, which may run concurrently. It is bounded by simply
+     * emptying it when it is full: the names of a class are usually translated again in a single render.
+     */
+    private abstract static class NameCache {
+        private static final int MAX_SIZE = 4096;
+
+        private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<String, String>();
+
+        String get(final String key) {
+            String name = names.get(key);
+            if (name == null) {
+                final StringBuffer buf = new StringBuffer();
+                translate(buf, key);
+                name = buf.toString();
+                if (names.size() >= MAX_SIZE) names.clear();
+                names.put(key, name);
+            }
+            return name;
+        }
+
+        protected abstract void translate(StringBuffer buf, String key);
     }
 
     protected static class GroovifiedMethodTextifier extends Textifier {
 
         private final GroovyCodeStyle codeStyle;
+        private final Map<Label, String> labels;
         private static final Textifier EMPTY_TEXTIFIER = new Textifier( Opcodes.ASM5 ) {
             @Override
             public List<Object> getText() {
@@ -183,8 +358,16 @@ public class GroovifiedTextifier extends Textifier {
         };
 
         public GroovifiedMethodTextifier(final GroovyCodeStyle codeStyle) {
+            this(codeStyle, new IdentityHashMap<Label, String>());
+        }
+
+        /**
+         * @param labels the map to store the label names into, which must be empty
+         */
+        public GroovifiedMethodTextifier(final GroovyCodeStyle codeStyle, final Map<Label, String> labels) {
             super( Opcodes.ASM5 );
             this.codeStyle = codeStyle;
+            this.labels = labels;
         }
 
         private boolean isLegacy() {
@@ -203,14 +386,14 @@ public class GroovifiedTextifier extends Textifier {
 
         public void visitInsn(final int opcode) {
             buf.setLength(0);
-            buf.append(tab2).append(OPCODES[opcode].toLowerCase()).append('\n');
+            buf.append(tab2).append(LOWER_OPCODES[opcode]).append('\n');
             text.add(buf.toString());
         }
 
         public void visitIntInsn(final int opcode, final int operand) {
             buf.setLength(0);
             buf.append(tab2)
-                    .append(OPCODES[opcode].toLowerCase())
+                    .append(LOWER_OPCODES[opcode])
                     .append(' ')
                     .append(opcode == Opcodes.NEWARRAY
                             ? (isLegacy() ? TYPES[operand] : ATYPES[operand])
@@ -222,7 +405,7 @@ public class GroovifiedTextifier extends Textifier {
         public void visitVarInsn(final int opcode, final int var) {
             buf.setLength(0);
             buf.append(tab2)
-                    .append(OPCODES[opcode].toLowerCase())
+                    .append(LOWER_OPCODES[opcode])
                     .append(' ')
                     .append(var)
                     .append('\n');
@@ -231,17 +414,16 @@ public class GroovifiedTextifier extends Textifier {
 
         public void visitTypeInsn(final int opcode, final String type) {
             buf.setLength(0);
-            final String opcodeStr = OPCODES[opcode];
-            buf.append(tab2).append("NEW".equals(opcodeStr) ?
+            buf.append(tab2).append(opcode == Opcodes.NEW ?
                     (isLegacy() ? "_new" : "newobject")
-                    : "INSTANCEOF".equals(opcodeStr) ?
-                    (isLegacy() ? "_instanceof" : "instance of:") : opcodeStr.toLowerCase()).append(' ');
+                    : opcode == Opcodes.INSTANCEOF ?
+                    (isLegacy() ? "_instanceof" : "instance of:") : LOWER_OPCODES[opcode]).append(' ');
             if (isLegacy()) {
                 buf.append('\'');
                 appendDescriptor(INTERNAL_NAME, type);
                 buf.append('\'');
             } else {
-                buf.append(groovyClassName(type.replace('/', '.')));
+                buf.append(CLASS_NAMES.get(type));
             }
             buf.append('\n');
             text.add(buf.toString());
@@ -253,7 +435,7 @@ public class GroovifiedTextifier extends Textifier {
                 final String name,
                 final String desc) {
             buf.setLength(0);
-            buf.append(tab2).append(OPCODES[opcode].toLowerCase()).append(' ');
+            buf.append(tab2).append(LOWER_OPCODES[opcode]).append(' ');
             if (isLegacy()) {
                 buf.append('\'');
                 appendDescriptor(INTERNAL_NAME, owner);
@@ -261,24 +443,26 @@ public class GroovifiedTextifier extends Textifier {
                 appendDescriptor(FIELD_DESCRIPTOR, desc);
                 buf.append('\'');
             } else {
-                buf.append(groovyClassName(Type.getObjectType(owner).getClassName()));
+                buf.append(ownerName(owner));
                 buf.append('.');
                 buf.append(name);
                 buf.append(" >> ");
-                buf.append(groovyClassName(Type.getReturnType(desc).getClassName()));
+                buf.append(TYPE_NAMES.get(desc));
             }
             buf.append('\n');
             text.add(buf.toString());
 
         }
 
+        @Override
         public void visitMethodInsn(
                 final int opcode,
                 final String owner,
                 final String name,
-                final String desc) {
+                final String desc,
+                final boolean itf) {
             buf.setLength(0);
-            buf.append(tab2).append(OPCODES[opcode].toLowerCase()).append(' ');
+            buf.append(tab2).append(LOWER_OPCODES[opcode]).append(' ');
             if (isLegacy()) {
                 buf.append('\'');
                 appendDescriptor(INTERNAL_NAME, owner);
@@ -286,20 +470,12 @@ public class GroovifiedTextifier extends Textifier {
                 appendDescriptor(METHOD_DESCRIPTOR, desc);
                 buf.append('\'');
             } else {
-                buf.append(groovyClassName(Type.getObjectType(owner).getClassName()));
+                buf.append(ownerName(owner));
                 buf.append('.');
                 if ("<init>".equals(name)) buf.append('"');
                 buf.append(name);
                 if ("<init>".equals(name)) buf.append('"');
-                buf.append('(');
-                final Type[] types = Type.getArgumentTypes(desc);
-                for (int i = 0; i < types.length; i++) {
-                    Type type = types[i];
-                    buf.append(groovyClassName(type.getClassName()));
-                    if (i < types.length - 1) buf.append(',');
-                }
-                buf.append(") >> ");
-                buf.append(groovyClassName(Type.getReturnType(desc).getClassName()));
+                buf.append(CALL_SIGNATURES.get(desc));
             }
             buf.append('\n');
             text.add(buf.toString());
@@ -308,9 +484,9 @@ public class GroovifiedTextifier extends Textifier {
         public void visitJumpInsn(final int opcode, final Label label) {
             buf.setLength(0);
             buf.append(tab2).append(
-                    OPCODES[opcode].equals("GOTO") ?
+                    opcode == Opcodes.GOTO ?
                             (isLegacy() ? "_goto" : "go to:")
-                            : OPCODES[opcode].toLowerCase()).append(' ');
+                            : LOWER_OPCODES[opcode]).append(' ');
             appendLabel(label);
             buf.append('\n');
             text.add(buf.toString());
@@ -338,13 +514,11 @@ public class GroovifiedTextifier extends Textifier {
          * @param l a label.
          */
         protected void appendLabel(final Label l) {
-            if (labelNames == null) {
-                labelNames = new HashMap<reloc.org.objectweb.asm.Label, String>();
-            }
-            String name = (String) labelNames.get(l);
+            String name = labels.get(l);
             if (name == null) {
-                name = "l" + labelNames.size();
-                labelNames.put(l, name);
+                final int index = labels.size();
+                name = index < LABEL_NAMES.length ? LABEL_NAMES[index] : "l" + index;
+                labels.put(l, name);
             }
             buf.append(name);
         }
@@ -433,7 +607,7 @@ public class GroovifiedTextifier extends Textifier {
                 appendDescriptor(FIELD_DESCRIPTOR, desc);
                 buf.append("\'");
             } else {
-                buf.append(groovyClassName(Type.getType(desc).getClassName()));
+                buf.append(TYPE_NAMES.get(desc));
             }
             buf.append(',').append(dims).append('\n');
             text.add(buf.toString());
@@ -458,7 +632,7 @@ public class GroovifiedTextifier extends Textifier {
                     appendDescriptor(INTERNAL_NAME, type);
                     buf.append('\'');
                 } else {
-                    buf.append(groovyClassName(type.replace('/', '.')));
+                    buf.append(CLASS_NAMES.get(type));
                 }
             } else {
                 appendDescriptor(INTERNAL_NAME, type);
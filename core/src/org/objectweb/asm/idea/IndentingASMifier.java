@@ -0,0 +1,112 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.util.ASMifier;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * An ASMifier which indents the generated Java code while printing it, according to the nesting of braces, so that
+ * it doesn't need to go through the IDE formatter.
+ */
+public class IndentingASMifier extends ASMifier {
+    private final String indent;
+
+    private int depth;
+    private boolean lineStart = true;
+    private boolean inString;
+    private boolean escaped;
+
+    /**
+     * @param indent the string used for each indentation level, for example four spaces or a tab
+     */
+    public IndentingASMifier(final String indent) {
+        super(Opcodes.ASM5, "cw", 0);
+        this.indent = indent;
+    }
+
+    @Override
+    public void print(final PrintWriter pw) {
+        depth = 0;
+        lineStart = true;
+        inString = false;
+        escaped = false;
+        print(pw, text);
+        pw.flush();
+    }
+
+    private void print(final PrintWriter pw, final List<?> list) {
+        for (Object o : list) {
+            if (o instanceof List) {
+                print(pw, (List<?>) o);
+            } else {
+                print(pw, o.toString());
+            }
+        }
+    }
+
+    /**
+     * Prints a piece of text, which may contain several lines or only part of a line, indenting each new line. String
+     * literals are tracked so that the braces they contain are ignored.
+     */
+    private void print(final PrintWriter pw, final String s) {
+        int start = 0;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (lineStart) {
+                if (c == '\n') {
+                    pw.write('\n');
+                    start = i + 1;
+                    continue;
+                }
+                if (c == '}' && depth > 0) depth--;
+                for (int j = 0; j < depth; j++) {
+                    pw.write(indent);
+                }
+                lineStart = false;
+                if (c == '}') {
+                    continue;
+                }
+            }
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth > 0) depth--;
+            } else if (c == '\n') {
+                pw.write(s, start, i + 1 - start);
+                start = i + 1;
+                lineStart = true;
+            }
+        }
+        if (start < s.length()) pw.write(s, start, s.length() - start);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import java.util.Arrays;
+
+/**
+ * Links the source lines of a class to the blocks of instructions of its bytecode view. A block starts at a
+ * <code>LINENUMBER</code> entry, including the label line just before it, and ends before the next one or at the end
+ * of the code of the method. Blocks are kept in primitive arrays, sorted by offset and by source line, so that both
+ * lookups are binary searches.
+ */
+public class LineNumberIndex {
+    private static final String LINENUMBER = "LINENUMBER ";
+    private static final int CODE_INDENT = 3;
+
+    // blocks in the order of the text
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] lines;
+    // indices of the blocks sorted by source line, then by offset
+    private final int[] byLine;
+
+    private LineNumberIndex(final int[] starts, final int[] ends, final int[] lines, final int count) {
+        this.starts = Arrays.copyOf(starts, count);
+        this.ends = Arrays.copyOf(ends, count);
+        this.lines = Arrays.copyOf(lines, count);
+        final long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = ((long) lines[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        byLine = new int[count];
+        for (int i = 0; i < count; i++) {
+            byLine[i] = (int) keys[i];
+        }
+    }
+
+    /**
+     * Indexes the text of a bytecode view, as printed by a {@link reloc.org.objectweb.asm.util.Textifier}.
+     */
+    public static LineNumberIndex build(final CharSequence text) {
+        final Builder builder = new Builder();
+        final int length = text.length();
+        int lineStart = 0;
+        while (lineStart < length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && text.charAt(lineEnd) != '\n') lineEnd++;
+            builder.line(text, lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+        }
+        return builder.build(length);
+    }
+
+    /**
+     * Replaces a range of the text this index was built for.
+     *
+     * @param start          the start offset of the replaced range
+     * @param end            the end offset of the replaced range, which must not hold any block
+     * @param inserted       the index of the inserted text
+     * @param insertedLength the length of the inserted text
+     * @return the index of the new text
+     */
+    public LineNumberIndex replace(final int start, final int end, final LineNumberIndex inserted, final int insertedLength) {
+        final int count = starts.length + inserted.starts.length;
+        final int[] newStarts = new int[count];
+        final int[] newEnds = new int[count];
+        final int[] newLines = new int[count];
+        int n = 0;
+        int i = 0;
+        for (; i < starts.length && starts[i] < start; i++, n++) {
+            newStarts[n] = starts[i];
+            newEnds[n] = ends[i];
+            newLines[n] = lines[i];
+        }
+        for (int j = 0; j < inserted.starts.length; j++, n++) {
+            newStarts[n] = inserted.starts[j] + start;
+            newEnds[n] = inserted.ends[j] + start;
+            newLines[n] = inserted.lines[j];
+        }
+        final int delta = insertedLength - (end - start);
+        for (; i < starts.length; i++, n++) {
+            newStarts[n] = starts[i] + delta;
+            newEnds[n] = ends[i] + delta;
+            newLines[n] = lines[i];
+        }
+        return new LineNumberIndex(newStarts, newEnds, newLines, n);
+    }
+
+    /**
+     * @param offset an offset in the bytecode view
+     * @return the source line of the block containing the offset, or -1 if there is none
+     */
+    public int getLine(final int offset) {
+        int low = 0;
+        int high = starts.length - 1;
+        int found = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (starts[mid] <= offset) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found >= 0 && offset <= ends[found] ? lines[found] : -1;
+    }
+
+    /**
+     * @param line a source line
+     * @return the start and end offsets of each block of the line, in the order of the text
+     */
+    public int[] getRanges(final int line) {
+        int low = 0;
+        int high = byLine.length;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (lines[byLine[mid]] < line) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int end = low;
+        while (end < byLine.length && lines[byLine[end]] == line) end++;
+        final int[] ranges = new int[2 * (end - low)];
+        for (int i = low; i < end; i++) {
+            ranges[2 * (i - low)] = starts[byLine[i]];
+            ranges[2 * (i - low) + 1] = ends[byLine[i]];
+        }
+        return ranges;
+    }
+
+    /**
+     * Indexes a text line by line, for example while it is being written.
+     */
+    public static class Builder {
+        private int[] starts = new int[64];
+        private int[] ends = new int[64];
+        private int[] lines = new int[64];
+        private int count;
+        private boolean open;
+        private int previousLineStart = -1;
+        private boolean previousIsLabel;
+
+        /**
+         * Indexes the next line of the text.
+         *
+         * @param text      the text, which may hold only this line and the ones before
+         * @param lineStart the offset of the start of the line
+         * @param lineEnd   the offset of the end of the line, excluding the line separator
+         */
+        public void line(final CharSequence text, final int lineStart, final int lineEnd) {
+            int indent = 0;
+            while (lineStart + indent < lineEnd && text.charAt(lineStart + indent) == ' ') indent++;
+            final int contentStart = lineStart + indent;
+            if (indent >= CODE_INDENT && startsWith(text, contentStart, LINENUMBER)) {
+                final int blockStart = previousIsLabel ? previousLineStart : lineStart;
+                if (open) ends[count - 1] = Math.max(starts[count - 1], blockStart - 1);
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                    ends = Arrays.copyOf(ends, count * 2);
+                    lines = Arrays.copyOf(lines, count * 2);
+                }
+                starts[count] = blockStart;
+                lines[count] = parseInt(text, contentStart + LINENUMBER.length(), lineEnd);
+                count++;
+                open = true;
+            } else if (open && (indent < CODE_INDENT || startsWith(text, contentStart, "LOCALVARIABLE") || startsWith(text, contentStart, "MAXSTACK"))) {
+                ends[count - 1] = Math.max(starts[count - 1], lineStart - 1);
+                open = false;
+            }
+            previousIsLabel = indent == CODE_INDENT && isLabel(text, contentStart, lineEnd);
+            previousLineStart = lineStart;
+        }
+
+        /**
+         * @param length the length of the whole text, once all of its lines have been indexed
+         */
+        public LineNumberIndex build(final int length) {
+            final int[] blockEnds = Arrays.copyOf(ends, count);
+            if (open) blockEnds[count - 1] = length;
+            return new LineNumberIndex(starts, blockEnds, lines, count);
+        }
+    }
+
+    private static boolean startsWith(final CharSequence text, final int offset, final String prefix) {
+        if (offset + prefix.length() > text.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (text.charAt(offset + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isLabel(final CharSequence text, final int start, final int end) {
+        if (end - start < 2 || text.charAt(start) != 'L') return false;
+        for (int i = start + 1; i < end; i++) {
+            if (!Character.isDigit(text.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    private static int parseInt(final CharSequence text, final int start, final int end) {
+        int value = 0;
+        for (int i = start; i < end && Character.isDigit(text.charAt(i)); i++) {
+            value = value * 10 + text.charAt(i) - '0';
+        }
+        return value;
+    }
+}
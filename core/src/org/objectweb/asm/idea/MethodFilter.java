@@ -0,0 +1,74 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import reloc.org.objectweb.asm.AnnotationVisitor;
+import reloc.org.objectweb.asm.Attribute;
+import reloc.org.objectweb.asm.ClassVisitor;
+import reloc.org.objectweb.asm.FieldVisitor;
+import reloc.org.objectweb.asm.MethodVisitor;
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.TypePath;
+
+/**
+ * Narrows a class to one method: only the header of the class and the matching methods are passed through, fields,
+ * inner classes, annotations and attributes of the class are dropped. The printers behind it then only render that
+ * method.
+ */
+public class MethodFilter extends ClassVisitor {
+    private final String method;
+
+    /**
+     * @param cv     the visitor receiving the filtered class
+     * @param method the name of the method followed by its descriptor, or only its name to keep every overload
+     */
+    public MethodFilter(final ClassVisitor cv, final String method) {
+        super(Opcodes.ASM5, cv);
+        this.method = method;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+        return null;
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+        return null;
+    }
+
+    @Override
+    public void visitAttribute(final Attribute attr) {
+    }
+
+    @Override
+    public void visitInnerClass(final String name, final String outerName, final String innerName, final int access) {
+    }
+
+    @Override
+    public FieldVisitor visitField(final int access, final String name, final String desc, final String signature, final Object value) {
+        return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+        final boolean matches = method.indexOf('(') < 0 ? method.equals(name) : method.equals(name + desc);
+        return matches ? super.visitMethod(access, name, desc, signature, exceptions) : null;
+    }
+}
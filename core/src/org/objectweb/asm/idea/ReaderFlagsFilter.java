@@ -0,0 +1,309 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import reloc.org.objectweb.asm.AnnotationVisitor;
+import reloc.org.objectweb.asm.ClassReader;
+import reloc.org.objectweb.asm.ClassVisitor;
+import reloc.org.objectweb.asm.Handle;
+import reloc.org.objectweb.asm.Label;
+import reloc.org.objectweb.asm.MethodVisitor;
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.TypePath;
+import reloc.org.objectweb.asm.tree.AbstractInsnNode;
+import reloc.org.objectweb.asm.tree.JumpInsnNode;
+import reloc.org.objectweb.asm.tree.LabelNode;
+import reloc.org.objectweb.asm.tree.LocalVariableAnnotationNode;
+import reloc.org.objectweb.asm.tree.LookupSwitchInsnNode;
+import reloc.org.objectweb.asm.tree.MethodNode;
+import reloc.org.objectweb.asm.tree.TableSwitchInsnNode;
+import reloc.org.objectweb.asm.tree.TryCatchBlockNode;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class visitor which makes its delegate see a class as if it had been read with stricter {@link ClassReader} flags
+ * than the ones actually used. This is what allows several printers with different flags to share a single traversal.
+ * <p/>
+ * {@link ClassReader#SKIP_CODE} can always be emulated. {@link ClassReader#SKIP_DEBUG} and
+ * {@link ClassReader#SKIP_FRAMES} can only be emulated together: methods are then buffered and the labels which were
+ * only created for debug information or frames are removed, so that label numbering matches a real skipping read.
+ */
+public class ReaderFlagsFilter extends ClassVisitor {
+    private static final int DEBUG_AND_FRAMES = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    private final boolean skipCode;
+    private final boolean skipDebugAndFrames;
+
+    /**
+     * @param cv          the delegate visitor
+     * @param readerFlags the flags the class is actually read with
+     * @param flags       the flags the delegate expects the class to be read with
+     */
+    public ReaderFlagsFilter(final ClassVisitor cv, final int readerFlags, final int flags) {
+        super(Opcodes.ASM5, cv);
+        final int emulated = flags & ~readerFlags;
+        skipCode = (emulated & ClassReader.SKIP_CODE) != 0;
+        skipDebugAndFrames = (emulated & DEBUG_AND_FRAMES) != 0;
+        if (skipDebugAndFrames && (flags & DEBUG_AND_FRAMES) != DEBUG_AND_FRAMES) {
+            throw new IllegalArgumentException("SKIP_DEBUG and SKIP_FRAMES can only be emulated together");
+        }
+    }
+
+    /**
+     * Returns the flags a class must be read with so that it can be filtered into each of the given flags.
+     */
+    public static int readerFlags(final int... flags) {
+        int skip = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+        int expand = 0;
+        for (int f : flags) {
+            skip &= f;
+            if ((f & ClassReader.SKIP_FRAMES) == 0) expand |= f & ClassReader.EXPAND_FRAMES;
+        }
+        return skip | expand;
+    }
+
+    /**
+     * Tells if a class read with the given reader flags has to be filtered to look like it was read with the other flags.
+     */
+    public static boolean isFilterNeeded(final int readerFlags, final int flags) {
+        return (flags & ~readerFlags & (ClassReader.SKIP_CODE | DEBUG_AND_FRAMES)) != 0;
+    }
+
+    /**
+     * Tells if a class read with the given reader flags can be filtered to look like it was read with the other flags,
+     * that is if it has been read with nothing skipped that the other flags keep, with the same kind of frames, and
+     * if the filter can emulate the missing flags.
+     */
+    public static boolean canEmulate(final int readerFlags, final int flags) {
+        if ((readerFlags & ~flags & (ClassReader.SKIP_CODE | DEBUG_AND_FRAMES)) != 0) return false;
+        if ((flags & ClassReader.SKIP_FRAMES) == 0 && (flags & ClassReader.EXPAND_FRAMES) != (readerFlags & ClassReader.EXPAND_FRAMES)) return false;
+        return (flags & ~readerFlags & DEBUG_AND_FRAMES) == 0 || (flags & DEBUG_AND_FRAMES) == DEBUG_AND_FRAMES;
+    }
+
+    @Override
+    public void visitSource(final String source, final String debug) {
+        if (!skipDebugAndFrames) super.visitSource(source, debug);
+    }
+
+    @Override
+    public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+        final MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        if (mv == null) return null;
+        if (skipCode) return new SkipCodeMethodVisitor(mv);
+        if (skipDebugAndFrames) return new SkipDebugAndFramesMethodNode(access, name, desc, signature, exceptions, mv);
+        return mv;
+    }
+
+    /**
+     * Forwards everything but the Code attribute contents.
+     */
+    private static class SkipCodeMethodVisitor extends MethodVisitor {
+        private SkipCodeMethodVisitor(final MethodVisitor mv) {
+            super(Opcodes.ASM5, mv);
+        }
+
+        @Override
+        public void visitCode() {
+        }
+
+        @Override
+        public void visitFrame(final int type, final int nLocal, final Object[] local, final int nStack, final Object[] stack) {
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int var) {
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+        }
+
+        @Override
+        public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
+        }
+
+        @Override
+        public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(final String name, final String desc, final Handle bsm, final Object... bsmArgs) {
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+        }
+
+        @Override
+        public void visitLabel(final Label label) {
+        }
+
+        @Override
+        public void visitLdcInsn(final Object cst) {
+        }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+        }
+
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String desc, final int dims) {
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public void visitTryCatchBlock(final Label start, final Label end, final Label handler, final String type) {
+        }
+
+        @Override
+        public AnnotationVisitor visitTryCatchAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public void visitLocalVariable(final String name, final String desc, final String signature, final Label start, final Label end, final int index) {
+        }
+
+        @Override
+        public AnnotationVisitor visitLocalVariableAnnotation(final int typeRef, final TypePath typePath, final Label[] start, final Label[] end, final int[] index, final String desc, final boolean visible) {
+            return null;
+        }
+
+        @Override
+        public void visitLineNumber(final int line, final Label start) {
+        }
+
+        @Override
+        public void visitMaxs(final int maxStack, final int maxLocals) {
+        }
+    }
+
+    /**
+     * Drops line numbers, local variables and frames, and buffers the rest of the method so that the labels which are
+     * not referenced by the code itself can be removed before replaying it.
+     * <p/>
+     * Label nodes are kept in a map of this method rather than in {@link Label#info}: when several filters buffer the
+     * same traversal, they see the same {@link Label} instances and would otherwise share, and relink, each other's
+     * label nodes.
+     */
+    private static class SkipDebugAndFramesMethodNode extends MethodNode {
+        private final MethodVisitor target;
+        private final Map<Label, LabelNode> labelNodes = new IdentityHashMap<Label, LabelNode>();
+
+        private SkipDebugAndFramesMethodNode(final int access, final String name, final String desc, final String signature, final String[] exceptions, final MethodVisitor target) {
+            super(Opcodes.ASM5, access, name, desc, signature, exceptions);
+            this.target = target;
+        }
+
+        @Override
+        protected LabelNode getLabelNode(final Label l) {
+            LabelNode node = labelNodes.get(l);
+            if (node == null) {
+                node = new LabelNode();
+                labelNodes.put(l, node);
+            }
+            return node;
+        }
+
+        @Override
+        public void visitFrame(final int type, final int nLocal, final Object[] local, final int nStack, final Object[] stack) {
+        }
+
+        @Override
+        public void visitLocalVariable(final String name, final String desc, final String signature, final Label start, final Label end, final int index) {
+        }
+
+        @Override
+        public void visitLineNumber(final int line, final Label start) {
+        }
+
+        @Override
+        public void visitEnd() {
+            // the lists of the tree API are raw, their elements are cast one by one instead of converting the lists
+            final Set<LabelNode> used = Collections.newSetFromMap(new IdentityHashMap<LabelNode, Boolean>());
+            for (Object node : tryCatchBlocks) {
+                final TryCatchBlockNode tryCatchBlock = (TryCatchBlockNode) node;
+                used.add(tryCatchBlock.start);
+                used.add(tryCatchBlock.end);
+                used.add(tryCatchBlock.handler);
+            }
+            addLocalVariableAnnotationLabels(visibleLocalVariableAnnotations, used);
+            addLocalVariableAnnotationLabels(invisibleLocalVariableAnnotations, used);
+            for (AbstractInsnNode insn = instructions.getFirst(); insn != null; insn = insn.getNext()) {
+                if (insn instanceof JumpInsnNode) {
+                    used.add(((JumpInsnNode) insn).label);
+                } else if (insn instanceof TableSwitchInsnNode) {
+                    used.add(((TableSwitchInsnNode) insn).dflt);
+                    addLabels(((TableSwitchInsnNode) insn).labels, used);
+                } else if (insn instanceof LookupSwitchInsnNode) {
+                    used.add(((LookupSwitchInsnNode) insn).dflt);
+                    addLabels(((LookupSwitchInsnNode) insn).labels, used);
+                }
+            }
+            AbstractInsnNode insn = instructions.getFirst();
+            while (insn != null) {
+                final AbstractInsnNode next = insn.getNext();
+                if (insn.getType() == AbstractInsnNode.LABEL && !used.contains(insn)) {
+                    instructions.remove(insn);
+                }
+                insn = next;
+            }
+            accept(target);
+        }
+
+        private static void addLocalVariableAnnotationLabels(final List<?> annotations, final Set<LabelNode> used) {
+            if (annotations == null) return;
+            for (Object annotation : annotations) {
+                addLabels(((LocalVariableAnnotationNode) annotation).start, used);
+                addLabels(((LocalVariableAnnotationNode) annotation).end, used);
+            }
+        }
+
+        private static void addLabels(final List<?> labels, final Set<LabelNode> used) {
+            for (Object label : labels) {
+                used.add((LabelNode) label);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.util.Textifier;
+
+/**
+ * A textifier meant to be used with {@link reloc.org.objectweb.asm.ClassReader#SKIP_CODE}, which prints a stub line
+ * in place of the code of each method. The stubs are found while the text is written into a
+ * {@link BytecodeTextBuffer}, so that the code of a method is only rendered when it is asked for.
+ */
+public class SkeletonTextifier extends Textifier {
+    private static final String STUB_PREFIX = "    // code of ";
+    private static final String STUB_SUFFIX = " not rendered, expand to show it";
+
+    public SkeletonTextifier() {
+        super(Opcodes.ASM5);
+    }
+
+    @Override
+    public Textifier visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+        final Textifier t = super.visitMethod(access, name, desc, signature, exceptions);
+        if ((access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0) {
+            text.add(STUB_PREFIX + name + desc + STUB_SUFFIX + "\n");
+        }
+        return t;
+    }
+
+    /**
+     * Tells if a line of a skeleton is a method stub.
+     *
+     * @param text  the text printed by a skeleton textifier
+     * @param start the offset of the start of the line
+     * @param end   the offset of the end of the line, excluding the line separator
+     * @return the stub, or null if the line isn't one
+     */
+    static Stub parseStub(final CharSequence text, final int start, final int end) {
+        if (end - start < STUB_PREFIX.length() + STUB_SUFFIX.length()) return null;
+        if (!regionMatches(text, start, STUB_PREFIX) || !regionMatches(text, end - STUB_SUFFIX.length(), STUB_SUFFIX)) return null;
+        return new Stub(text.subSequence(start + STUB_PREFIX.length(), end - STUB_SUFFIX.length()).toString(), start, end);
+    }
+
+    private static boolean regionMatches(final CharSequence text, final int offset, final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (text.charAt(offset + i) != s.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The line standing for the code of a method.
+     */
+    public static class Stub {
+        private final String method;
+        private final int startOffset;
+        private final int endOffset;
+
+        private Stub(final String method, final int startOffset, final int endOffset) {
+            this.method = method;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+        }
+
+        /**
+         * @return the name of the method followed by its descriptor
+         */
+        public String getMethod() {
+            return method;
+        }
+
+        public int getStartOffset() {
+            return startOffset;
+        }
+
+        /**
+         * @return the offset of the end of the stub line, excluding the line separator
+         */
+        public int getEndOffset() {
+            return endOffset;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import reloc.org.objectweb.asm.AnnotationVisitor;
+import reloc.org.objectweb.asm.Attribute;
+import reloc.org.objectweb.asm.ClassReader;
+import reloc.org.objectweb.asm.Handle;
+import reloc.org.objectweb.asm.Label;
+import reloc.org.objectweb.asm.MethodVisitor;
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.TypePath;
+import reloc.org.objectweb.asm.tree.AnnotationNode;
+import reloc.org.objectweb.asm.tree.ClassNode;
+import reloc.org.objectweb.asm.tree.FieldNode;
+import reloc.org.objectweb.asm.tree.MethodNode;
+import reloc.org.objectweb.asm.util.Textifier;
+import reloc.org.objectweb.asm.util.TraceClassVisitor;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.Array;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares two versions of a class member by member. Each field and method gets a fingerprint, in which labels are
+ * numbered in order of appearance and line numbers, local variable names and frames are left out, so that members
+ * which only moved in the source are considered unchanged. Only the changed, added and removed members are printed,
+ * which keeps the texts to diff proportional to the change rather than to the class.
+ */
+public class StructuralDiff {
+    private final String before;
+    private final String after;
+    private final int unchangedMembers;
+
+    private StructuralDiff(final String before, final String after, final int unchangedMembers) {
+        this.before = before;
+        this.after = after;
+        this.unchangedMembers = unchangedMembers;
+    }
+
+    /**
+     * @param before the previous class file contents
+     * @param after  the current class file contents
+     * @param flags  the {@link ClassReader} flags used to read both versions
+     * @return the changed members of each version
+     */
+    public static StructuralDiff compare(final byte[] before, final byte[] after, final int flags) {
+        final ClassNode beforeClass = read(before, flags);
+        final ClassNode afterClass = read(after, flags);
+        final Map<String, Object> beforeMembers = members(beforeClass);
+        final Map<String, Object> afterMembers = members(afterClass);
+        final Set<String> keys = new LinkedHashSet<String>(afterMembers.keySet());
+        keys.addAll(beforeMembers.keySet());
+
+        final Textifier beforePrinter = header(beforeClass);
+        final Textifier afterPrinter = header(afterClass);
+        final TraceClassVisitor beforeVisitor = new TraceClassVisitor(null, beforePrinter, null);
+        final TraceClassVisitor afterVisitor = new TraceClassVisitor(null, afterPrinter, null);
+        int unchanged = 0;
+        for (String key : keys) {
+            final Object beforeMember = beforeMembers.get(key);
+            final Object afterMember = afterMembers.get(key);
+            if (beforeMember != null && afterMember != null && fingerprint(beforeMember).equals(fingerprint(afterMember))) {
+                unchanged++;
+                continue;
+            }
+            if (beforeMember != null) accept(beforeMember, beforeVisitor);
+            if (afterMember != null) accept(afterMember, afterVisitor);
+        }
+        return new StructuralDiff(print(beforePrinter, unchanged), print(afterPrinter, unchanged), unchanged);
+    }
+
+    /**
+     * @return the header of the previous version of the class, followed by its members which have changed
+     */
+    public String getBefore() {
+        return before;
+    }
+
+    /**
+     * @return the header of the current version of the class, followed by its members which have changed
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    public int getUnchangedMembers() {
+        return unchangedMembers;
+    }
+
+    private static ClassNode read(final byte[] bytes, final int flags) {
+        final ClassNode node = new ClassNode(Opcodes.ASM5);
+        new ClassReader(bytes).accept(node, flags);
+        return node;
+    }
+
+    private static Map<String, Object> members(final ClassNode node) {
+        final Map<String, Object> members = new LinkedHashMap<String, Object>();
+        for (Object field : node.fields) {
+            members.put("field " + ((FieldNode) field).name, field);
+        }
+        for (Object method : node.methods) {
+            members.put("method " + ((MethodNode) method).name + ((MethodNode) method).desc, method);
+        }
+        return members;
+    }
+
+    private static Textifier header(final ClassNode node) {
+        final Textifier printer = new Textifier();
+        printer.visit(node.version, node.access, node.name, node.signature, node.superName,
+                (String[]) node.interfaces.toArray(new String[node.interfaces.size()]));
+        return printer;
+    }
+
+    private static void accept(final Object member, final TraceClassVisitor visitor) {
+        if (member instanceof FieldNode) {
+            ((FieldNode) member).accept(visitor);
+        } else {
+            ((MethodNode) member).accept(visitor);
+        }
+    }
+
+    private static String print(final Textifier printer, final int unchanged) {
+        printer.text.add("\n  // " + unchanged + " unchanged members not shown\n");
+        printer.visitClassEnd();
+        final StringWriter writer = new StringWriter();
+        final PrintWriter printWriter = new PrintWriter(writer);
+        printer.print(printWriter);
+        printWriter.flush();
+        return writer.toString();
+    }
+
+    private static String fingerprint(final Object member) {
+        if (member instanceof FieldNode) {
+            final FieldNode field = (FieldNode) member;
+            final Fingerprint fingerprint = new Fingerprint();
+            fingerprint.append(field.access).append(field.name).append(field.desc).append(field.signature).append(value(field.value));
+            fingerprint.annotations(field.visibleAnnotations, field.invisibleAnnotations);
+            return fingerprint.toString();
+        }
+        final MethodNode method = (MethodNode) member;
+        final Fingerprint fingerprint = new Fingerprint();
+        fingerprint.append(method.access).append(method.name).append(method.desc).append(method.signature).append(String.valueOf(method.exceptions));
+        method.accept(fingerprint);
+        return fingerprint.toString();
+    }
+
+    private static String value(final Object value) {
+        if (value == null || !value.getClass().isArray()) return String.valueOf(value);
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < Array.getLength(value); i++) {
+            sb.append(value(Array.get(value, i))).append(',');
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * Builds the fingerprint of a method from its events, leaving out the debug information and the frames, and
+     * numbering the labels in order of appearance.
+     */
+    private static class Fingerprint extends MethodVisitor {
+        private final StringBuilder sb = new StringBuilder();
+        private final Map<Label, Integer> labels = new IdentityHashMap<Label, Integer>();
+        private final AnnotationVisitor annotationVisitor = new AnnotationVisitor(Opcodes.ASM5) {
+            @Override
+            public void visit(final String name, final Object value) {
+                append(name).append(value(value));
+            }
+
+            @Override
+            public void visitEnum(final String name, final String desc, final String value) {
+                append(name).append(desc).append(value);
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(final String name, final String desc) {
+                append(name).append(desc);
+                return this;
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(final String name) {
+                append(name).append("[");
+                return this;
+            }
+
+            @Override
+            public void visitEnd() {
+                append(";");
+            }
+        };
+
+        private Fingerprint() {
+            super(Opcodes.ASM5);
+        }
+
+        private Fingerprint append(final Object o) {
+            sb.append(o).append(' ');
+            return this;
+        }
+
+        private Fingerprint label(final Label label) {
+            Integer index = labels.get(label);
+            if (index == null) {
+                index = labels.size();
+                labels.put(label, index);
+            }
+            return append("L" + index);
+        }
+
+        private void annotations(final List<?>... lists) {
+            for (List<?> list : lists) {
+                if (list == null) continue;
+                for (Object annotation : list) {
+                    ((AnnotationNode) annotation).accept(annotationVisitor);
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return sb.toString();
+        }
+
+        @Override
+        public void visitParameter(final String name, final int access) {
+            append("P").append(name).append(access);
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotationDefault() {
+            append("@default");
+            return annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(final String desc, final boolean visible) {
+            append("@").append(desc).append(visible);
+            return annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            append("@T").append(typeRef).append(typePath).append(desc).append(visible);
+            return annotationVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitParameterAnnotation(final int parameter, final String desc, final boolean visible) {
+            append("@P").append(parameter).append(desc).append(visible);
+            return annotationVisitor;
+        }
+
+        @Override
+        public void visitAttribute(final Attribute attr) {
+            append("A").append(attr.type);
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            append(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            append(opcode).append(operand);
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int var) {
+            append(opcode).append(var);
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+            append(opcode).append(type);
+        }
+
+        @Override
+        public void visitFieldInsn(final int opcode, final String owner, final String name, final String desc) {
+            append(opcode).append(owner).append(name).append(desc);
+        }
+
+        @Override
+        public void visitMethodInsn(final int opcode, final String owner, final String name, final String desc, final boolean itf) {
+            append(opcode).append(owner).append(name).append(desc).append(itf);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(final String name, final String desc, final Handle bsm, final Object... bsmArgs) {
+            append("indy").append(name).append(desc).append(bsm).append(value(bsmArgs));
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            append(opcode).label(label);
+        }
+
+        @Override
+        public void visitLabel(final Label label) {
+            append(":").label(label);
+        }
+
+        @Override
+        public void visitLdcInsn(final Object cst) {
+            append("ldc").append(cst.getClass().getName()).append(cst);
+        }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+            append("iinc").append(var).append(increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(final int min, final int max, final Label dflt, final Label... labels) {
+            append("tableswitch").append(min).append(max).label(dflt);
+            for (Label label : labels) {
+                label(label);
+            }
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            append("lookupswitch").append(value(keys)).label(dflt);
+            for (Label label : labels) {
+                label(label);
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String desc, final int dims) {
+            append("multianewarray").append(desc).append(dims);
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            append("@I").append(typeRef).append(typePath).append(desc).append(visible);
+            return annotationVisitor;
+        }
+
+        @Override
+        public void visitTryCatchBlock(final Label start, final Label end, final Label handler, final String type) {
+            append("try").label(start).label(end).label(handler).append(type);
+        }
+
+        @Override
+        public AnnotationVisitor visitTryCatchAnnotation(final int typeRef, final TypePath typePath, final String desc, final boolean visible) {
+            append("@C").append(typeRef).append(typePath).append(desc).append(visible);
+            return annotationVisitor;
+        }
+
+        @Override
+        public void visitMaxs(final int maxStack, final int maxLocals) {
+            append("maxs").append(maxStack).append(maxLocals);
+        }
+    }
+}
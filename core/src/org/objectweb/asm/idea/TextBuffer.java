@@ -0,0 +1,204 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A text written in fixed size chunks, so that it is never copied as it grows, which printers can write to directly.
+ * Once written, the text is read through the {@link CharSequence} interface, for example by an editor document, or
+ * written elsewhere with {@link #writeTo(Writer)}, without building an intermediate string. Sub sequences are views
+ * which don't copy the text either. The buffer must not be written to once it has been handed out for reading.
+ */
+public class TextBuffer extends Writer implements CharSequence {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private char[][] chunks = new char[4][];
+    private int length;
+
+    @Override
+    public void write(final int c) {
+        final char[] chunk = chunkFor(length);
+        chunk[length & CHUNK_MASK] = (char) c;
+        length++;
+    }
+
+    @Override
+    public void write(final char[] cbuf, int off, int len) {
+        while (len > 0) {
+            final char[] chunk = chunkFor(length);
+            final int offset = length & CHUNK_MASK;
+            final int n = Math.min(len, CHUNK_SIZE - offset);
+            System.arraycopy(cbuf, off, chunk, offset, n);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void write(final String str, int off, int len) {
+        while (len > 0) {
+            final char[] chunk = chunkFor(length);
+            final int offset = length & CHUNK_MASK;
+            final int n = Math.min(len, CHUNK_SIZE - offset);
+            str.getChars(off, off + n, chunk, offset);
+            length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public char charAt(final int index) {
+        if (index < 0 || index >= length) throw new IndexOutOfBoundsException(String.valueOf(index));
+        return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+    }
+
+    public CharSequence subSequence(final int start, final int end) {
+        if (start < 0 || end > length || start > end) throw new IndexOutOfBoundsException(start + ", " + end);
+        return new Region(start, end);
+    }
+
+    /**
+     * @return the number of chars allocated for the text, which may be up to a whole chunk more than its length
+     */
+    public int capacity() {
+        int capacity = 0;
+        for (char[] chunk : chunks) {
+            if (chunk != null) capacity += chunk.length;
+        }
+        return capacity;
+    }
+
+    /**
+     * Shrinks the last chunk to the length of the text, once it has been written. A short text would otherwise hold a
+     * whole chunk.
+     */
+    public void trimToSize() {
+        final int last = (length - 1) >>> CHUNK_BITS;
+        final int used = length & CHUNK_MASK;
+        if (used != 0 && chunks[last].length != used) {
+            final char[] trimmed = new char[used];
+            System.arraycopy(chunks[last], 0, trimmed, 0, used);
+            chunks[last] = trimmed;
+        }
+    }
+
+    /**
+     * Writes a region of the text, chunk by chunk.
+     */
+    public void writeTo(final Writer out, final int start, final int end) throws IOException {
+        int index = start;
+        while (index < end) {
+            final int offset = index & CHUNK_MASK;
+            final int n = Math.min(end - index, CHUNK_SIZE - offset);
+            out.write(chunks[index >>> CHUNK_BITS], offset, n);
+            index += n;
+        }
+    }
+
+    public void writeTo(final Writer out) throws IOException {
+        writeTo(out, 0, length);
+    }
+
+    @Override
+    public String toString() {
+        return toString(0, length);
+    }
+
+    private String toString(final int start, final int end) {
+        final char[] chars = new char[end - start];
+        int index = start;
+        while (index < end) {
+            final int offset = index & CHUNK_MASK;
+            final int n = Math.min(end - index, CHUNK_SIZE - offset);
+            System.arraycopy(chunks[index >>> CHUNK_BITS], offset, chars, index - start, n);
+            index += n;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the chunk holding the character at the given index, allocated if needed
+     */
+    private char[] chunkFor(final int index) {
+        final int chunk = index >>> CHUNK_BITS;
+        if (chunk == chunks.length) {
+            final char[][] grown = new char[chunks.length * 2][];
+            System.arraycopy(chunks, 0, grown, 0, chunks.length);
+            chunks = grown;
+        }
+        if (chunks[chunk] == null) {
+            chunks[chunk] = new char[CHUNK_SIZE];
+        } else if (chunks[chunk].length < CHUNK_SIZE) {
+            // written to again after trimToSize()
+            final char[] grown = new char[CHUNK_SIZE];
+            System.arraycopy(chunks[chunk], 0, grown, 0, chunks[chunk].length);
+            chunks[chunk] = grown;
+        }
+        return chunks[chunk];
+    }
+
+    /**
+     * A view of a region of the buffer.
+     */
+    private class Region implements CharSequence {
+        private final int start;
+        private final int end;
+
+        private Region(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int length() {
+            return end - start;
+        }
+
+        public char charAt(final int index) {
+            if (index < 0 || index >= end - start) throw new IndexOutOfBoundsException(String.valueOf(index));
+            return TextBuffer.this.charAt(start + index);
+        }
+
+        public CharSequence subSequence(final int from, final int to) {
+            if (from < 0 || to > end - start || from > to) throw new IndexOutOfBoundsException(from + ", " + to);
+            return new Region(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return TextBuffer.this.toString(start, end);
+        }
+    }
+}
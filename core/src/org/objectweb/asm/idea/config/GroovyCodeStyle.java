@@ -36,4 +36,8 @@ public enum GroovyCodeStyle {
     GroovyCodeStyle(final String label) {
         this.label = label;
     }
+
+    public String getLabel() {
+        return label;
+    }
 }
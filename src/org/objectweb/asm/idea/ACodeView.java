@@ -33,17 +33,38 @@ import com.intellij.openapi.diff.SimpleContent;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.FoldRegion;
+import com.intellij.openapi.editor.FoldingModel;
+import com.intellij.openapi.editor.ScrollType;
+import com.intellij.openapi.editor.colors.EditorColors;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.event.EditorMouseAdapter;
+import com.intellij.openapi.editor.event.EditorMouseEvent;
+import com.intellij.openapi.editor.event.EditorMouseEventArea;
+import com.intellij.openapi.editor.ex.DocumentEx;
+import com.intellij.openapi.editor.ex.FoldingListener;
+import com.intellij.openapi.editor.ex.FoldingModelEx;
+import com.intellij.openapi.editor.markup.HighlighterLayer;
+import com.intellij.openapi.editor.markup.HighlighterTargetArea;
+import com.intellij.openapi.editor.markup.MarkupModel;
+import com.intellij.openapi.editor.markup.RangeHighlighter;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.keymap.KeymapManager;
 import com.intellij.openapi.options.ShowSettingsUtil;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.SimpleToolWindowPanel;
 import com.intellij.openapi.util.IconLoader;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.ToolWindowManager;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.PsiFileFactory;
 import com.intellij.ui.PopupHandler;
+import com.intellij.util.diff.Diff;
+import com.intellij.util.diff.FilesTooBigForDiffException;
+import org.jetbrains.annotations.NotNull;
 import org.objectweb.asm.idea.config.ASMPluginComponent;
 
 import javax.swing.*;
@@ -51,6 +72,13 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Base class for editors which displays bytecode or ASMified code.
@@ -63,25 +91,46 @@ public class ACodeView extends SimpleToolWindowPanel implements Disposable {
     protected final ToolWindowManager toolWindowManager;
     protected final KeymapManager keymapManager;
     private final String extension;
+    private final BytecodeRenderer.View view;
 
 
     protected Editor editor;
     protected Document document;
     // used for diff view
-    private String previousCode;
+    private CharSequence previousCode;
     private VirtualFile previousFile;
+    // the text last set, usually a TextBuffer shared with the render cache
+    private CharSequence currentCode = "";
+    // collapsed regions standing for the code of methods which hasn't been rendered yet, see SkeletonTextifier
+    private final Map<FoldRegion, String> methodStubs = new HashMap<FoldRegion, String>();
+    // methods whose code has been requested but not received yet
+    private final Set<String> pendingMethods = new HashSet<String>();
+    // regions holding the code of the methods which have been expanded, expanded again when the class is rendered again
+    private final Map<FoldRegion, String> expandedMethods = new HashMap<FoldRegion, String>();
+    // links the source lines to the blocks of the bytecode view
+    private LineNumberIndex lineNumbers;
+    private final List<RangeHighlighter> lineHighlighters = new ArrayList<RangeHighlighter>();
+    private int highlightedLine = -1;
 
-    public ACodeView(final ToolWindowManager toolWindowManager, KeymapManager keymapManager, final Project project, final String fileExtension) {
+    public ACodeView(final ToolWindowManager toolWindowManager, KeymapManager keymapManager, final Project project, final String fileExtension, final BytecodeRenderer.View view) {
         super(true, true);
         this.toolWindowManager = toolWindowManager;
         this.keymapManager = keymapManager;
         this.project = project;
         this.extension = fileExtension;
+        this.view = view;
         setupUI();
     }
 
-    public ACodeView(final ToolWindowManager toolWindowManager, KeymapManager keymapManager, final Project project) {
-        this(toolWindowManager, keymapManager, project, "java");
+    public ACodeView(final ToolWindowManager toolWindowManager, KeymapManager keymapManager, final Project project, final BytecodeRenderer.View view) {
+        this(toolWindowManager, keymapManager, project, "java", view);
+    }
+
+    /**
+     * @return the kind of rendering this editor displays
+     */
+    public BytecodeRenderer.View getView() {
+        return view;
     }
 
     private void setupUI() {
@@ -89,12 +138,21 @@ public class ACodeView extends SimpleToolWindowPanel implements Disposable {
         document = editorFactory.createDocument("");
         editor = editorFactory.createEditor(document, project, FileTypeManager.getInstance().getFileTypeByExtension(extension), true);
 
+        if (editor.getFoldingModel() instanceof FoldingModelEx) {
+            ((FoldingModelEx) editor.getFoldingModel()).addListener(new MethodStubExpander(), this);
+        }
+
+        editor.addEditorMouseListener(new SourceNavigator());
+
         final JComponent editorComponent = editor.getComponent();
         add(editorComponent);
         final AnAction diffAction = createShowDiffAction();
         DefaultActionGroup group = new DefaultActionGroup();
         group.add(diffAction);
+        if (view == BytecodeRenderer.View.BYTECODE) group.add(new HistoryAction());
         group.add(new ShowSettingsAction());
+        group.add(new ClearCacheAction());
+        group.add(new FollowCaretAction());
         
         final ActionManager actionManager = ActionManager.getInstance();
         final ActionToolbar actionToolBar = actionManager.createActionToolbar("ASM", group, true);
@@ -104,17 +162,244 @@ public class ACodeView extends SimpleToolWindowPanel implements Disposable {
         setToolbar(buttonsPanel);
     }
 
-    public void setCode(final VirtualFile file, final String code) {
-        final String text = document.getText();
-        if (previousFile == null || file == null || previousFile.getPath().equals(file.getPath()) && !Constants.NO_CLASS_FOUND.equals(text)) {
-            if (file != null) previousCode = text;
+    public void setCode(final VirtualFile file, final CharSequence code) {
+        final boolean sameClass = file != null && previousFile != null && previousFile.getPath().equals(file.getPath());
+        if (previousFile == null || file == null || previousFile.getPath().equals(file.getPath()) && !Constants.NO_CLASS_FOUND.contentEquals(document.getCharsSequence())) {
+            if (file != null) previousCode = currentCode;
         } else if (!previousFile.getPath().equals(file.getPath())) {
             previousCode = ""; // reset previous code
         }
-        document.setText(code);
+        currentCode = code;
+        updateDocument(code);
+        if (view == BytecodeRenderer.View.BYTECODE) {
+            foldMethodStubs(code, sameClass);
+            setLineNumbers(code instanceof BytecodeTextBuffer ? ((BytecodeTextBuffer) code).getLineNumbers() : null);
+        }
         if (file != null) previousFile = file;
     }
 
+    /**
+     * Replaces the code of a method stub with the actual code of the method. The method stays in a fold region, so
+     * that it can be collapsed again. Must be called in a write action.
+     *
+     * @param method      the name of the method followed by its descriptor
+     * @param code        the code of the method
+     * @param lineNumbers the line number index of the code
+     */
+    public void expandMethodStub(final String method, final String code, final LineNumberIndex lineNumbers) {
+        pendingMethods.remove(method);
+        FoldRegion stub = null;
+        for (Map.Entry<FoldRegion, String> entry : methodStubs.entrySet()) {
+            if (entry.getValue().equals(method)) stub = entry.getKey();
+        }
+        if (stub == null || !stub.isValid()) return;
+        final FoldRegion region = stub;
+        final int start = region.getStartOffset();
+        final int end = region.getEndOffset();
+        final String body = code.endsWith("\n") ? code.substring(0, code.length() - 1) : code;
+        final FoldingModel foldingModel = editor.getFoldingModel();
+        foldingModel.runBatchFoldingOperation(new Runnable() {
+            public void run() {
+                foldingModel.removeFoldRegion(region);
+                methodStubs.remove(region);
+            }
+        });
+        document.replaceString(start, end, body);
+        foldingModel.runBatchFoldingOperation(new Runnable() {
+            public void run() {
+                final FoldRegion expanded = foldingModel.addFoldRegion(start, start + body.length(), "...");
+                if (expanded != null) expandedMethods.put(expanded, method);
+            }
+        });
+        if (this.lineNumbers != null && lineNumbers != null) setLineNumbers(this.lineNumbers.replace(start, end, lineNumbers, body.length()));
+    }
+
+    /**
+     * Highlights the instructions compiled from a source line, and scrolls to the first of them.
+     *
+     * @param line the source line, starting at 1
+     */
+    public void highlightSourceLine(final int line) {
+        highlightSourceLine(line, true);
+    }
+
+    private void highlightSourceLine(final int line, final boolean scroll) {
+        final MarkupModel markupModel = editor.getMarkupModel();
+        for (RangeHighlighter highlighter : lineHighlighters) {
+            markupModel.removeHighlighter(highlighter);
+        }
+        lineHighlighters.clear();
+        highlightedLine = line;
+        if (lineNumbers == null) return;
+        final int[] ranges = lineNumbers.getRanges(line);
+        final TextAttributes attributes = EditorColorsManager.getInstance().getGlobalScheme().getAttributes(EditorColors.SEARCH_RESULT_ATTRIBUTES);
+        for (int i = 0; i < ranges.length; i += 2) {
+            lineHighlighters.add(markupModel.addRangeHighlighter(ranges[i], ranges[i + 1], HighlighterLayer.SELECTION - 1, attributes, HighlighterTargetArea.LINES_IN_RANGE));
+        }
+        if (scroll && ranges.length > 0) {
+            editor.getScrollingModel().scrollTo(editor.offsetToLogicalPosition(ranges[0]), ScrollType.MAKE_VISIBLE);
+        }
+    }
+
+    /**
+     * Replaces the line number index after the text has changed, keeping the highlighted line.
+     *
+     * @param lineNumbers the index of the new text, built while it was rendered, or null if it has none
+     */
+    private void setLineNumbers(final LineNumberIndex lineNumbers) {
+        this.lineNumbers = lineNumbers;
+        if (highlightedLine >= 0) highlightSourceLine(highlightedLine, false);
+    }
+
+    /**
+     * Folds the method stubs of a skeleton, found while it was rendered, see {@link BytecodeTextBuffer}. Only the fold
+     * regions of the previous stubs and expanded methods are removed. When the same class is rendered again, the methods
+     * which were expanded, or about to be, stay expanded and their code is asked for again.
+     *
+     * @param code      the text of the view
+     * @param sameClass true if the text is a new rendering of the class displayed until now
+     */
+    private void foldMethodStubs(final CharSequence code, final boolean sameClass) {
+        final boolean lazy = project.getComponent(ASMPluginComponent.class).isLazyMethods();
+        if (!lazy && methodStubs.isEmpty() && expandedMethods.isEmpty()) return;
+        final Set<String> keepExpanded = new HashSet<String>();
+        if (sameClass) {
+            keepExpanded.addAll(expandedMethods.values());
+            keepExpanded.addAll(pendingMethods);
+        }
+        pendingMethods.clear();
+        final List<SkeletonTextifier.Stub> stubs = lazy && code instanceof BytecodeTextBuffer
+                ? ((BytecodeTextBuffer) code).getStubs() : Collections.<SkeletonTextifier.Stub>emptyList();
+        final FoldingModel foldingModel = editor.getFoldingModel();
+        foldingModel.runBatchFoldingOperation(new Runnable() {
+            public void run() {
+                for (FoldRegion region : methodStubs.keySet()) {
+                    if (region.isValid()) foldingModel.removeFoldRegion(region);
+                }
+                for (FoldRegion region : expandedMethods.keySet()) {
+                    if (region.isValid()) foldingModel.removeFoldRegion(region);
+                }
+                methodStubs.clear();
+                expandedMethods.clear();
+                for (SkeletonTextifier.Stub stub : stubs) {
+                    final FoldRegion region = foldingModel.addFoldRegion(stub.getStartOffset(), stub.getEndOffset(), "...");
+                    if (region == null) continue;
+                    methodStubs.put(region, stub.getMethod());
+                    if (keepExpanded.contains(stub.getMethod())) {
+                        pendingMethods.add(stub.getMethod());
+                    } else {
+                        region.setExpanded(false);
+                    }
+                }
+            }
+        });
+        for (String method : pendingMethods) {
+            OutlineRenderer.getInstance(project).renderMethod(method);
+        }
+    }
+
+    /**
+     * Replaces the contents of the document, only touching the lines which actually changed, so that the highlighting,
+     * folding, caret and scroll position of the editor survive a refresh. Lines are compared in place, and the changed
+     * ones are handed to the document as views of the new text, so that the text is only copied by the document.
+     *
+     * @param code the new text
+     */
+    private void updateDocument(final CharSequence code) {
+        final CharSequence text = document.getCharsSequence();
+        if (text.length() == 0) {
+            document.setText(code);
+            return;
+        }
+        final Line[] oldLines = splitLines(text);
+        final Line[] newLines = splitLines(code);
+        Diff.Change change;
+        try {
+            change = Diff.buildChanges(oldLines, newLines);
+        } catch (FilesTooBigForDiffException e) {
+            document.setText(code);
+            return;
+        }
+        final List<Diff.Change> changes = new ArrayList<Diff.Change>();
+        for (; change != null; change = change.link) {
+            changes.add(change);
+        }
+        if (changes.isEmpty()) return;
+        final int[] lineOffsets = new int[oldLines.length + 1];
+        for (int i = 0; i < oldLines.length; i++) {
+            lineOffsets[i + 1] = oldLines[i].end;
+        }
+        // applied in one bulk update, so that the editor reacts once rather than to each changed range
+        final boolean bulk = document instanceof DocumentEx;
+        if (bulk) ((DocumentEx) document).setInBulkUpdate(true);
+        try {
+            // going backwards so that the offsets of the remaining changes are still valid
+            for (int i = changes.size() - 1; i >= 0; i--) {
+                final Diff.Change c = changes.get(i);
+                final CharSequence inserted = c.inserted == 0 ? ""
+                        : code.subSequence(newLines[c.line1].start, newLines[c.line1 + c.inserted - 1].end);
+                document.replaceString(lineOffsets[c.line0], lineOffsets[c.line0 + c.deleted], inserted);
+            }
+        } finally {
+            if (bulk) ((DocumentEx) document).setInBulkUpdate(false);
+        }
+    }
+
+    /**
+     * Splits a text into lines, each line keeping its line separator, so that joining them gives back the text.
+     */
+    private static Line[] splitLines(final CharSequence text) {
+        final List<Line> lines = new ArrayList<Line>();
+        int start = 0;
+        final int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(new Line(text, start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < length) lines.add(new Line(text, start, length));
+        return lines.toArray(new Line[lines.size()]);
+    }
+
+    /**
+     * A line of a text, compared by contents without being copied out of the text.
+     */
+    private static class Line {
+        private final CharSequence text;
+        private final int start;
+        private final int end;
+        private final int hash;
+
+        private Line(final CharSequence text, final int start, final int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + text.charAt(i);
+            }
+            hash = h;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Line)) return false;
+            final Line line = (Line) o;
+            if (hash != line.hash || end - start != line.end - line.start) return false;
+            for (int i = 0; i < end - start; i++) {
+                if (text.charAt(start + i) != line.text.charAt(line.start + i)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
 
 
     public void dispose() {
@@ -125,6 +410,38 @@ public class ACodeView extends SimpleToolWindowPanel implements Disposable {
         }
     }
 
+    /**
+     * Opens the source line an instruction of the bytecode view has been compiled from, when it is clicked. The focus
+     * stays in the tool window.
+     */
+    private class SourceNavigator extends EditorMouseAdapter {
+        @Override
+        public void mouseClicked(final EditorMouseEvent e) {
+            if (lineNumbers == null || e.getArea() != EditorMouseEventArea.EDITING_AREA) return;
+            final int offset = editor.logicalPositionToOffset(editor.xyToLogicalPosition(e.getMouseEvent().getPoint()));
+            final int line = lineNumbers.getLine(offset);
+            final VirtualFile sourceFile = OutlineRenderer.getInstance(project).getSourceFile();
+            if (line > 0 && sourceFile != null) {
+                new OpenFileDescriptor(project, sourceFile, line - 1, 0).navigate(false);
+            }
+        }
+    }
+
+    /**
+     * Asks for the code of a method when its stub is expanded.
+     */
+    private class MethodStubExpander implements FoldingListener {
+        public void onFoldRegionStateChange(@NotNull final FoldRegion region) {
+            final String method = methodStubs.get(region);
+            if (method != null && region.isExpanded() && pendingMethods.add(method)) {
+                OutlineRenderer.getInstance(project).renderMethod(method);
+            }
+        }
+
+        public void onFoldProcessingEnd() {
+        }
+    }
+
     private AnAction createShowDiffAction() {
         return new ShowDiffAction();
     }
@@ -145,6 +462,60 @@ public class ACodeView extends SimpleToolWindowPanel implements Disposable {
             ShowSettingsUtil.getInstance().showSettingsDialog(project, project.getComponent(ASMPluginComponent.class));
         }
     }
+    /**
+     * Narrows the outline to the method at the caret of the source editor, see {@link CaretMethodTracker}.
+     */
+    private class FollowCaretAction extends ToggleAction {
+
+        private FollowCaretAction() {
+            super("Method at caret", "Only show the method at the caret, following the caret", null);
+        }
+
+        @Override
+        public boolean displayTextInToolbar() {
+            return true;
+        }
+
+        @Override
+        public boolean isSelected(final AnActionEvent e) {
+            return project.getComponent(ASMPluginComponent.class).isFollowCaret();
+        }
+
+        @Override
+        public void setSelected(final AnActionEvent e, final boolean state) {
+            project.getComponent(ASMPluginComponent.class).setFollowCaret(state);
+            final OutlineRenderer renderer = OutlineRenderer.getInstance(project);
+            if (!state && renderer.getFile() != null) renderer.scope(renderer.getFile(), null);
+        }
+    }
+
+    /**
+     * Displays the hit and miss counters of the {@link RenderCache}, and clears it when performed.
+     */
+    private static class ClearCacheAction extends AnAction {
+
+        private ClearCacheAction() {
+            super("Cache", "Clear the cache of rendered classes", null);
+        }
+
+        @Override
+        public boolean displayTextInToolbar() {
+            return true;
+        }
+
+        @Override
+        public void update(final AnActionEvent e) {
+            final RenderCache cache = RenderCache.getInstance();
+            e.getPresentation().setText(String.format("Cache: %d hits, %d misses (%d KB)",
+                    cache.getHits(), cache.getMisses(), cache.getSize() / 1024));
+        }
+
+        @Override
+        public void actionPerformed(final AnActionEvent e) {
+            RenderCache.getInstance().clear();
+        }
+    }
+
     private class ShowDiffAction extends AnAction {
 
         public ShowDiffAction() {
@@ -155,7 +526,38 @@ public class ACodeView extends SimpleToolWindowPanel implements Disposable {
 
         @Override
         public void update(final AnActionEvent e) {
-            e.getPresentation().setEnabled(!"".equals(previousCode) && (previousFile!=null));
+            // only counts the snapshots: they are decompressed, and possibly read from disk, when the action is performed
+            e.getPresentation().setEnabled((previousCode == null || previousCode.length() > 0) && (previousFile!=null)
+                    || view == BytecodeRenderer.View.BYTECODE && OutlineRenderer.getInstance(project).getSnapshots().size() >= 2);
+        }
+
+        @Override
+        public boolean displayTextInToolbar() {
+            return true;
+        }
+
+        /**
+         * The bytecode view compares the two last versions of the class member by member, see {@link StructuralDiff}.
+         * The other views, or the bytecode view without history, compare the previous and current text of the view.
+         */
+        @Override
+        public void actionPerformed(final AnActionEvent e) {
+            final List<BytecodeHistory.Snapshot> snapshots = OutlineRenderer.getInstance(project).getSnapshots();
+            if (view != BytecodeRenderer.View.BYTECODE || snapshots.size() < 2) {
+                showDiff(null, DIFF_TITLES);
+                return;
+            }
+            new StructuralDiffTask(snapshots.get(snapshots.size() - 2), snapshots.get(snapshots.size() - 1), DIFF_TITLES, true).queue();
+        }
+    }
+
+    /**
+     * Compares two versions of the class picked from the {@link BytecodeHistory}.
+     */
+    private class HistoryAction extends AnAction {
+
+        private HistoryAction() {
+            super("History", "Compare two versions of the bytecode of this class", null);
         }
 
         @Override
@@ -163,31 +565,98 @@ public class ACodeView extends SimpleToolWindowPanel implements Disposable {
             return true;
         }
 
+        @Override
+        public void update(final AnActionEvent e) {
+            e.getPresentation().setEnabled(OutlineRenderer.getInstance(project).getSnapshots().size() > 1);
+        }
+
         @Override
         public void actionPerformed(final AnActionEvent e) {
-            DiffManager.getInstance().getDiffTool().show(new DiffRequest(project) {
-                @Override
-                public DiffContent[] getContents() {
-                    // there must be a simpler way to obtain the file type
-                    PsiFile psiFile = PsiFileFactory.getInstance(project).createFileFromText("asm." + extension, "");
-                    final DiffContent currentContent = previousFile == null ? new SimpleContent("") : new SimpleContent(document.getText(), psiFile.getFileType());
-                    final DiffContent oldContent = new SimpleContent(previousCode == null ? "" : previousCode, psiFile.getFileType());
+            final List<BytecodeHistory.Snapshot> snapshots = OutlineRenderer.getInstance(project).getSnapshots();
+            if (snapshots.size() < 2) return;
+            final HistoryDiffDialog dialog = new HistoryDiffDialog(project, snapshots);
+            dialog.show();
+            if (!dialog.isOK()) return;
+            new StructuralDiffTask(dialog.getBefore(), dialog.getAfter(),
+                    new String[]{HistoryDiffDialog.getTitle(dialog.getBefore()), HistoryDiffDialog.getTitle(dialog.getAfter())}, false).queue();
+        }
+    }
+
+    /**
+     * Reads two versions of the class from the {@link BytecodeHistory} and compares them off the event dispatch thread,
+     * since they may have to be read from disk and decompressed, then opens the diff window.
+     */
+    private class StructuralDiffTask extends Task.Modal {
+        private final BytecodeHistory.Snapshot before;
+        private final BytecodeHistory.Snapshot after;
+        private final String[] titles;
+        private final boolean textFallback;
+        private final int readerFlags;
+
+        private StructuralDiff structuralDiff;
+
+        /**
+         * @param textFallback whether to compare the text of the view if one of the versions has been dropped from the
+         *                     history, rather than showing nothing
+         */
+        private StructuralDiffTask(final BytecodeHistory.Snapshot before, final BytecodeHistory.Snapshot after,
+                                   final String[] titles, final boolean textFallback) {
+            super(project, "Comparing bytecode", true);
+            this.before = before;
+            this.after = after;
+            this.titles = titles;
+            this.textFallback = textFallback;
+            this.readerFlags = RenderTask.readerFlags(project.getComponent(ASMPluginComponent.class));
+        }
+
+        public void run(final ProgressIndicator indicator) {
+            final BytecodeHistory history = BytecodeHistory.getInstance();
+            final byte[] beforeBytes = history.getBytes(before);
+            final byte[] afterBytes = history.getBytes(after);
+            if (beforeBytes == null || afterBytes == null) return;
+            indicator.checkCanceled();
+            structuralDiff = StructuralDiff.compare(beforeBytes, afterBytes, readerFlags);
+        }
+
+        @Override
+        public void onSuccess() {
+            if (project.isDisposed() || structuralDiff == null && !textFallback) return;
+            showDiff(structuralDiff, titles);
+        }
+    }
+
+    /**
+     * Opens the diff window, comparing either the given versions of the class, or the previous and current text of the
+     * view if there are none.
+     */
+    private void showDiff(final StructuralDiff structuralDiff, final String[] titles) {
+        DiffManager.getInstance().getDiffTool().show(new DiffRequest(project) {
+            @Override
+            public DiffContent[] getContents() {
+                final FileType fileType = FileTypeManager.getInstance().getFileTypeByExtension(extension);
+                if (structuralDiff != null) {
                     return new DiffContent[]{
-                            oldContent,
-                            currentContent
+                            new SimpleContent(structuralDiff.getBefore(), fileType),
+                            new SimpleContent(structuralDiff.getAfter(), fileType)
                     };
                 }
+                final DiffContent currentContent = previousFile == null ? new SimpleContent("") : new SimpleContent(document.getText(), fileType);
+                final DiffContent oldContent = new SimpleContent(previousCode == null ? "" : previousCode.toString(), fileType);
+                return new DiffContent[]{
+                        oldContent,
+                        currentContent
+                };
+            }
 
-                @Override
-                public String[] getContentTitles() {
-                    return DIFF_TITLES;
-                }
+            @Override
+            public String[] getContentTitles() {
+                return titles;
+            }
 
-                @Override
-                public String getWindowTitle() {
-                    return DIFF_WINDOW_TITLE;
-                }
-            });
-        }
+            @Override
+            public String getWindowTitle() {
+                return DIFF_WINDOW_TITLE;
+            }
+        });
     }
 }
@@ -0,0 +1,249 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.concurrency.JobLauncher;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassOwner;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.Processor;
+import reloc.org.objectweb.asm.ClassReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Renders every class found in a selection of files, directories, packages or modules, in the background. The classes
+ * are split among the threads of the platform job pool, and the progress indicator cancels the whole batch. The views
+ * go through the {@link RenderCache}, so that opening one of the classes afterwards is immediate. The results are
+ * listed in the tool window, see {@link BatchResultsView}, and optionally written to a directory.
+ */
+class BatchRenderTask extends Task.Backgroundable {
+    private final VirtualFile[] files;
+    private final Module[] modules;
+    private final File outputDirectory;
+
+    private final List<Result> results = Collections.synchronizedList(new ArrayList<Result>());
+
+    /**
+     * @param project         the project instance
+     * @param files           the selected files and directories, source or output
+     * @param modules         the selected modules, whose whole output directory is rendered
+     * @param outputDirectory the directory the views are written to, or null to only list the results
+     */
+    BatchRenderTask(final Project project, final VirtualFile[] files, final Module[] modules, final File outputDirectory) {
+        super(project, "Rendering bytecode", true);
+        this.files = files;
+        this.modules = modules;
+        this.outputDirectory = outputDirectory;
+    }
+
+    public void run(final ProgressIndicator indicator) {
+        indicator.setText("Looking for class files");
+        // the nested classes of the selected source files are listed from the index
+        ClassFileIndex.getInstance(getProject()).waitUntilBuilt();
+        final List<VirtualFile> classFiles = ApplicationManager.getApplication().runReadAction(new Computable<List<VirtualFile>>() {
+            public List<VirtualFile> compute() {
+                return collectClassFiles();
+            }
+        });
+        indicator.setText("Rendering " + classFiles.size() + " classes");
+        indicator.setIndeterminate(false);
+        final AtomicInteger done = new AtomicInteger();
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(classFiles, indicator, false, new Processor<VirtualFile>() {
+            public boolean process(final VirtualFile file) {
+                results.add(render(file));
+                indicator.setFraction((double) done.incrementAndGet() / classFiles.size());
+                return true;
+            }
+        });
+    }
+
+    @Override
+    public void onSuccess() {
+        final List<Result> sorted = new ArrayList<Result>(results);
+        Collections.sort(sorted, new Comparator<Result>() {
+            public int compare(final Result r1, final Result r2) {
+                return r1.getClassName().compareTo(r2.getClassName());
+            }
+        });
+        BatchResultsView.show(getProject(), sorted, outputDirectory);
+    }
+
+    private Result render(final VirtualFile file) {
+        final byte[] bytes;
+        try {
+            bytes = file.contentsToByteArray();
+        } catch (IOException e) {
+            return new Result(file, file.getNameWithoutExtension(), e.getMessage());
+        }
+        String className = file.getNameWithoutExtension();
+        try {
+            final ClassReader reader = new ClassReader(bytes);
+            className = reader.getClassName();
+            final Map<BytecodeRenderer.View, CharSequence> texts = ApplicationManager.getApplication().runReadAction(new Computable<Map<BytecodeRenderer.View, CharSequence>>() {
+                public Map<BytecodeRenderer.View, CharSequence> compute() {
+                    // each class is rendered once, so its parsed class would only evict the ones of the tool window
+                    return RenderTask.render(getProject(), null, bytes, EnumSet.allOf(BytecodeRenderer.View.class), null, false);
+                }
+            });
+            if (outputDirectory != null) write(className, texts);
+            return new Result(file, className.replace('/', '.'), null);
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (IOException e) {
+            return new Result(file, className.replace('/', '.'), e.getMessage());
+        } catch (RuntimeException e) {
+            // malformed class file, or one ASM can't read
+            return new Result(file, className.replace('/', '.'), e.toString());
+        }
+    }
+
+    /**
+     * Writes the views of a class next to each other, in the package directory of the class.
+     *
+     * @param internalName the internal name of the class, for example <code>a/b/Outer$Inner</code>
+     */
+    private void write(final String internalName, final Map<BytecodeRenderer.View, CharSequence> texts) throws IOException {
+        for (Map.Entry<BytecodeRenderer.View, CharSequence> entry : texts.entrySet()) {
+            final File file = new File(outputDirectory, internalName + getSuffix(entry.getKey()));
+            FileUtil.createParentDirs(file);
+            final Writer writer = new OutputStreamWriter(new FileOutputStream(file), CharsetToolkit.UTF8_CHARSET);
+            try {
+                final CharSequence text = entry.getValue();
+                if (text instanceof TextBuffer) {
+                    ((TextBuffer) text).writeTo(writer);
+                } else {
+                    writer.write(text.toString());
+                }
+            } finally {
+                writer.close();
+            }
+        }
+    }
+
+    private static String getSuffix(final BytecodeRenderer.View view) {
+        switch (view) {
+            case GROOVIFIED:
+                return ".groovified.txt";
+            case ASMIFIED:
+                return ".asmified.java";
+            default:
+                return ".bytecode.txt";
+        }
+    }
+
+    /**
+     * Lists the class files of the selection: class files as is, the classes compiled from source files, and every
+     * class file below the selected directories and in the output directories of the selected modules. Must be called
+     * in a read action.
+     */
+    private List<VirtualFile> collectClassFiles() {
+        final Set<VirtualFile> classFiles = new LinkedHashSet<VirtualFile>();
+        for (Module module : modules) {
+            final CompilerModuleExtension cme = CompilerModuleExtension.getInstance(module);
+            if (cme == null) continue;
+            for (VirtualFile root : cme.getOutputRoots(true)) {
+                collect(root, classFiles);
+            }
+        }
+        for (VirtualFile file : files) {
+            collect(file, classFiles);
+        }
+        return new ArrayList<VirtualFile>(classFiles);
+    }
+
+    private void collect(final VirtualFile file, final Set<VirtualFile> classFiles) {
+        if (file.isDirectory()) {
+            for (VirtualFile child : file.getChildren()) {
+                collect(child, classFiles);
+            }
+        } else if ("class".equals(file.getExtension())) {
+            classFiles.add(file);
+        } else {
+            final PsiFile psiFile = PsiManager.getInstance(getProject()).findFile(file);
+            if (!(psiFile instanceof PsiClassOwner)) return;
+            final ClassFileIndex index = ClassFileIndex.getInstance(getProject());
+            for (PsiClass psiClass : ((PsiClassOwner) psiFile).getClasses()) {
+                final String binaryName = index.getBinaryName(psiClass);
+                if (binaryName == null) continue;
+                final VirtualFile classFile = index.findClassFile(binaryName);
+                if (classFile != null) classFiles.add(classFile);
+                for (String nested : index.getNestedClasses(binaryName)) {
+                    final VirtualFile nestedFile = index.findClassFile(nested);
+                    if (nestedFile != null) classFiles.add(nestedFile);
+                }
+            }
+        }
+    }
+
+    /**
+     * The outcome of the rendering of a class file.
+     */
+    static class Result {
+        private final VirtualFile file;
+        private final String className;
+        private final String error;
+
+        private Result(final VirtualFile file, final String className, final String error) {
+            this.file = file;
+            this.className = className;
+            this.error = error;
+        }
+
+        VirtualFile getFile() {
+            return file;
+        }
+
+        String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return the reason why the class couldn't be rendered, or null if it has been rendered
+         */
+        String getError() {
+            return error;
+        }
+    }
+}
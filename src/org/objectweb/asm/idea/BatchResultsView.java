@@ -0,0 +1,116 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.SimpleToolWindowPanel;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.ui.ColoredListCellRenderer;
+import com.intellij.ui.SimpleTextAttributes;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBScrollPane;
+import com.intellij.ui.content.Content;
+import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.content.ContentManager;
+
+import javax.swing.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.List;
+
+/**
+ * Lists the classes rendered by a {@link BatchRenderTask} in a tab of the tool window. Double clicking a class, or
+ * pressing enter, displays it in the bytecode tab.
+ */
+class BatchResultsView extends SimpleToolWindowPanel {
+    private static final String TAB_NAME = "Classes";
+
+    private final Project project;
+    private final JBList list;
+
+    private BatchResultsView(final Project project, final List<BatchRenderTask.Result> results, final File outputDirectory) {
+        super(true, true);
+        this.project = project;
+        list = new JBList(results.toArray());
+        list.setCellRenderer(new ResultRenderer());
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(final MouseEvent e) {
+                if (e.getClickCount() == 2) showSelected();
+            }
+        });
+        list.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(final KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_ENTER) showSelected();
+            }
+        });
+        setContent(new JBScrollPane(list));
+        setToolbar(new JLabel(getSummary(results, outputDirectory)));
+    }
+
+    /**
+     * Displays the results of a batch in the tool window, replacing the previous ones. Must be called on the EDT.
+     */
+    static void show(final Project project, final List<BatchRenderTask.Result> results, final File outputDirectory) {
+        final ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow("ASM");
+        if (toolWindow == null) return;
+        final ContentManager contentManager = toolWindow.getContentManager();
+        final Content previous = contentManager.findContent(TAB_NAME);
+        if (previous != null) contentManager.removeContent(previous, true);
+        final Content content = ContentFactory.SERVICE.getInstance().createContent(new BatchResultsView(project, results, outputDirectory), TAB_NAME, false);
+        contentManager.addContent(content);
+        contentManager.setSelectedContent(content);
+        toolWindow.activate(null);
+    }
+
+    private static String getSummary(final List<BatchRenderTask.Result> results, final File outputDirectory) {
+        int failed = 0;
+        for (BatchRenderTask.Result result : results) {
+            if (result.getError() != null) failed++;
+        }
+        final StringBuilder summary = new StringBuilder();
+        summary.append(' ').append(results.size() - failed).append(" classes rendered");
+        if (failed > 0) summary.append(", ").append(failed).append(" failed");
+        if (outputDirectory != null) summary.append(", written to ").append(outputDirectory.getPath());
+        return summary.toString();
+    }
+
+    private void showSelected() {
+        final BatchRenderTask.Result result = (BatchRenderTask.Result) list.getSelectedValue();
+        if (result == null || !result.getFile().isValid()) return;
+        OutlineRequests.getInstance(project).show(result.getFile());
+        final ContentManager contentManager = ToolWindowManager.getInstance(project).getToolWindow("ASM").getContentManager();
+        final Content bytecode = contentManager.findContent("Bytecode");
+        if (bytecode != null) contentManager.setSelectedContent(bytecode);
+    }
+
+    private static class ResultRenderer extends ColoredListCellRenderer {
+        @Override
+        protected void customizeCellRenderer(final JList list, final Object value, final int index, final boolean selected, final boolean hasFocus) {
+            final BatchRenderTask.Result result = (BatchRenderTask.Result) value;
+            append(result.getClassName(), SimpleTextAttributes.REGULAR_ATTRIBUTES);
+            if (result.getError() != null) append("  " + result.getError(), SimpleTextAttributes.ERROR_ATTRIBUTES);
+        }
+    }
+}
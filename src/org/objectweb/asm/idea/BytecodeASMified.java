@@ -40,7 +40,7 @@ import java.awt.*;
 public class BytecodeASMified extends ACodeView {
 
 	public BytecodeASMified(final ToolWindowManager toolWindowManager, KeymapManager keymapManager, final Project project) {
-		super(toolWindowManager, keymapManager, project);
+		super(toolWindowManager, keymapManager, project, BytecodeRenderer.View.ASMIFIED);
 	}
 
 	public static BytecodeASMified getInstance(Project project) {
@@ -0,0 +1,300 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jdom.Element;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Application level history of the versions of the class files displayed in the tool window. Each class file keeps a
+ * ring of its last versions, stored compressed and keyed by the time they were rendered. All the snapshots together
+ * are bounded by a memory budget: past it, the oldest snapshots are either dropped or, if enabled, spilled to disk.
+ */
+@State(
+        name = "ASMBytecodeHistory",
+        storages = {
+                @Storage(id = "other", file = "$APP_CONFIG$/asm-bytecode-outline.xml")
+        }
+)
+public class BytecodeHistory implements PersistentStateComponent<Element>, Disposable {
+    public static final int DEFAULT_MAX_SIZE_MB = 8;
+    public static final int SNAPSHOTS_PER_CLASS = 16;
+
+    // class file path -> snapshots, oldest first
+    private final Map<String, LinkedList<Snapshot>> classes = new HashMap<String, LinkedList<Snapshot>>();
+    // snapshots held in memory, oldest first
+    private final LinkedList<Snapshot> inMemory = new LinkedList<Snapshot>();
+    private long size;
+    private int maxSizeMB = DEFAULT_MAX_SIZE_MB;
+    private boolean spillToDisk = false;
+    private File spillDirectory;
+
+    public static BytecodeHistory getInstance() {
+        return ServiceManager.getService(BytecodeHistory.class);
+    }
+
+    /**
+     * Records a version of a class file, unless it is the same as the last recorded one.
+     *
+     * @param path  the path of the class file
+     * @param bytes its contents
+     */
+    public void record(final String path, final byte[] bytes) {
+        // the contents are hashed and compressed outside of the lock, which the event dispatch thread takes to list snapshots
+        final byte[] digest = RenderCache.digest(bytes);
+        if (isLast(path, digest)) return;
+        final Snapshot snapshot = new Snapshot(path, System.currentTimeMillis(), digest, compress(bytes), bytes.length);
+        add(snapshot);
+    }
+
+    private synchronized boolean isLast(final String path, final byte[] digest) {
+        final LinkedList<Snapshot> snapshots = classes.get(path);
+        return snapshots != null && !snapshots.isEmpty() && Arrays.equals(snapshots.getLast().digest, digest);
+    }
+
+    private synchronized void add(final Snapshot snapshot) {
+        if (isLast(snapshot.path, snapshot.digest)) return;
+        LinkedList<Snapshot> snapshots = classes.get(snapshot.path);
+        if (snapshots == null) {
+            snapshots = new LinkedList<Snapshot>();
+            classes.put(snapshot.path, snapshots);
+        }
+        snapshots.addLast(snapshot);
+        inMemory.addLast(snapshot);
+        size += snapshot.compressed.length;
+        if (snapshots.size() > SNAPSHOTS_PER_CLASS) drop(snapshots.getFirst());
+        evict();
+    }
+
+    /**
+     * @param path the path of a class file
+     * @return the recorded versions of the class file, oldest first
+     */
+    public synchronized List<Snapshot> getSnapshots(final String path) {
+        final LinkedList<Snapshot> snapshots = classes.get(path);
+        return snapshots == null ? new ArrayList<Snapshot>() : new ArrayList<Snapshot>(snapshots);
+    }
+
+    /**
+     * @return the contents of the class file when the snapshot was taken, or null if it has been dropped since
+     */
+    public synchronized byte[] getBytes(final Snapshot snapshot) {
+        byte[] compressed = snapshot.compressed;
+        if (compressed == null && snapshot.spillFile != null) {
+            try {
+                compressed = FileUtil.loadFileBytes(snapshot.spillFile);
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return compressed == null ? null : decompress(compressed, snapshot.length);
+    }
+
+    public synchronized void clear() {
+        for (List<Snapshot> snapshots : classes.values()) {
+            for (Snapshot snapshot : snapshots) {
+                if (snapshot.spillFile != null) FileUtil.delete(snapshot.spillFile);
+            }
+        }
+        classes.clear();
+        inMemory.clear();
+        size = 0;
+    }
+
+    /**
+     * @return the memory used by the compressed snapshots, in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getMaxSizeMB() {
+        return maxSizeMB;
+    }
+
+    public synchronized void setMaxSizeMB(final int maxSizeMB) {
+        this.maxSizeMB = maxSizeMB;
+        evict();
+    }
+
+    public synchronized boolean isSpillToDisk() {
+        return spillToDisk;
+    }
+
+    public synchronized void setSpillToDisk(final boolean spillToDisk) {
+        this.spillToDisk = spillToDisk;
+    }
+
+    public void dispose() {
+        clear();
+    }
+
+    private void evict() {
+        final long maxSize = maxSizeMB * 1024L * 1024L;
+        while (size > maxSize && !inMemory.isEmpty()) {
+            final Snapshot snapshot = inMemory.getFirst();
+            if (!spillToDisk || !spill(snapshot)) drop(snapshot);
+        }
+    }
+
+    /**
+     * Moves a snapshot from memory to a file.
+     *
+     * @return false if the snapshot couldn't be written
+     */
+    private boolean spill(final Snapshot snapshot) {
+        try {
+            if (spillDirectory == null) {
+                spillDirectory = new File(PathManager.getSystemPath(), "asm-bytecode-outline");
+                FileUtil.createDirectory(spillDirectory);
+            }
+            final File file = FileUtil.createTempFile(spillDirectory, "snapshot", ".bin", true);
+            FileUtil.writeToFile(file, snapshot.compressed);
+            snapshot.spillFile = file;
+        } catch (IOException e) {
+            return false;
+        }
+        inMemory.remove(snapshot);
+        size -= snapshot.compressed.length;
+        snapshot.compressed = null;
+        return true;
+    }
+
+    private void drop(final Snapshot snapshot) {
+        final LinkedList<Snapshot> snapshots = classes.get(snapshot.path);
+        if (snapshots != null) {
+            snapshots.remove(snapshot);
+            if (snapshots.isEmpty()) classes.remove(snapshot.path);
+        }
+        if (snapshot.compressed != null) {
+            inMemory.remove(snapshot);
+            size -= snapshot.compressed.length;
+            snapshot.compressed = null;
+        }
+        if (snapshot.spillFile != null) {
+            FileUtil.delete(snapshot.spillFile);
+            snapshot.spillFile = null;
+        }
+    }
+
+    private static byte[] compress(final byte[] bytes) {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 64);
+            final byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(final byte[] compressed, final int length) {
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            final byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length && !inflater.finished()) {
+                offset += inflater.inflate(bytes, offset, length - offset);
+            }
+            return bytes;
+        } catch (DataFormatException e) {
+            return null;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // -------------------- state persistence
+
+    public synchronized Element getState() {
+        Element root = new Element("state");
+        Element historyNode = new Element("history");
+        historyNode.setAttribute("maxSizeMB", String.valueOf(maxSizeMB));
+        historyNode.setAttribute("spillToDisk", String.valueOf(spillToDisk));
+        root.addContent(historyNode);
+        return root;
+    }
+
+    public synchronized void loadState(final Element state) {
+        Element historyNode = state.getChild("history");
+        if (historyNode != null) {
+            final String maxSizeStr = historyNode.getAttributeValue("maxSizeMB");
+            if (maxSizeStr != null) maxSizeMB = Integer.valueOf(maxSizeStr);
+            final String spillToDiskStr = historyNode.getAttributeValue("spillToDisk");
+            if (spillToDiskStr != null) spillToDisk = Boolean.valueOf(spillToDiskStr);
+        }
+    }
+
+    /**
+     * A version of a class file.
+     */
+    public static class Snapshot {
+        private final String path;
+        private final long timestamp;
+        private final byte[] digest;
+        private final int length;
+        // null once spilled or dropped
+        private byte[] compressed;
+        private File spillFile;
+
+        private Snapshot(final String path, final long timestamp, final byte[] digest, final byte[] compressed, final int length) {
+            this.path = path;
+            this.timestamp = timestamp;
+            this.digest = digest;
+            this.compressed = compressed;
+            this.length = length;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * @return the time the snapshot was taken, in milliseconds
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowAnchor;
 import com.intellij.openapi.wm.ToolWindowManager;
 import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.idea.lang.BytecodeFileType;
 
 import javax.swing.*;
 import java.awt.*;
@@ -45,7 +46,7 @@ import java.awt.*;
 public class BytecodeOutline extends ACodeView {
 
 	public BytecodeOutline(final Project project, KeymapManager keymapManager, final ToolWindowManager toolWindowManager) {
-		super(toolWindowManager, keymapManager, project);
+		super(toolWindowManager, keymapManager, project, BytecodeFileType.DEFAULT_EXTENSION, BytecodeRenderer.View.BYTECODE);
 	}
 
 	public static BytecodeOutline getInstance(Project project) {
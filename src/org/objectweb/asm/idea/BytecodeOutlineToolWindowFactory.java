@@ -23,6 +23,10 @@ import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.openapi.wm.ToolWindowFactory;
 import com.intellij.openapi.wm.ToolWindowManager;
 import com.intellij.ui.content.ContentFactory;
+import com.intellij.ui.content.ContentManagerAdapter;
+import com.intellij.ui.content.ContentManagerEvent;
+
+import javax.swing.*;
 
 /**
  * ASM ToolWindow factory
@@ -32,6 +36,16 @@ public class BytecodeOutlineToolWindowFactory implements ToolWindowFactory{
 		BytecodeOutline outline = BytecodeOutline.getInstance(project);
 		BytecodeASMified asmified = BytecodeASMified.getInstance(project);
         GroovifiedView groovified = GroovifiedView.getInstance(project);
+		toolWindow.getContentManager().addContentManagerListener(new ContentManagerAdapter() {
+			@Override
+			public void selectionChanged(final ContentManagerEvent event) {
+				// tabs are only rendered once they become visible
+				final JComponent component = event.getContent().getComponent();
+				if (event.getOperation() == ContentManagerEvent.ContentOperation.add && component instanceof ACodeView) {
+					OutlineRenderer.getInstance(project).render(((ACodeView) component).getView());
+				}
+			}
+		});
 		toolWindow.getContentManager().addContent(ContentFactory.SERVICE.getInstance().createContent(outline, "Bytecode", false));
 		toolWindow.getContentManager().addContent(ContentFactory.SERVICE.getInstance().createContent(asmified, "ASMified", false));
 		toolWindow.getContentManager().addContent(ContentFactory.SERVICE.getInstance().createContent(groovified, "Groovified", false));
@@ -0,0 +1,127 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.CaretAdapter;
+import com.intellij.openapi.editor.event.CaretEvent;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.psi.*;
+import com.intellij.psi.util.ClassUtil;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.TypeConversionUtil;
+import com.intellij.util.Alarm;
+import org.objectweb.asm.idea.config.ASMPluginComponent;
+
+/**
+ * When following the caret is enabled, narrows the outline to the method at the caret of the source editors of the
+ * project, once the caret has stopped moving. Outside of a method, the whole class at the caret is rendered.
+ */
+class CaretMethodTracker extends CaretAdapter {
+    // delay after the last caret move before the outline is updated
+    private static final int DEBOUNCE_MS = 200;
+
+    private final Project project;
+    private final OutlineRenderer renderer;
+    private final Alarm alarm;
+
+    CaretMethodTracker(final Project project, final OutlineRenderer renderer) {
+        this.project = project;
+        this.renderer = renderer;
+        this.alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    }
+
+    @Override
+    public void caretPositionChanged(final CaretEvent e) {
+        final Editor editor = e.getEditor();
+        if (editor.getProject() != project || renderer.getFile() == null) return;
+        if (!project.getComponent(ASMPluginComponent.class).isFollowCaret()) return;
+        final ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow("ASM");
+        if (toolWindow == null || !toolWindow.isVisible()) return;
+        alarm.cancelAllRequests();
+        alarm.addRequest(new Runnable() {
+            public void run() {
+                if (!project.isDisposed() && !editor.isDisposed()) update(editor);
+            }
+        }, DEBOUNCE_MS);
+    }
+
+    private void update(final Editor editor) {
+        final PsiFile psiFile = PsiDocumentManager.getInstance(project).getPsiFile(editor.getDocument());
+        if (!(psiFile instanceof PsiClassOwner)) return;
+        final PsiElement element = psiFile.findElementAt(editor.getCaretModel().getOffset());
+        final PsiMethod method = PsiTreeUtil.getParentOfType(element, PsiMethod.class, false);
+        final PsiClass psiClass = method != null ? method.getContainingClass() : PsiTreeUtil.getParentOfType(element, PsiClass.class, false);
+        if (psiClass == null) return;
+        final ClassFileIndex index = ClassFileIndex.getInstance(project);
+        final String binaryName = index.getBinaryName(psiClass);
+        final VirtualFile classFile = binaryName == null ? null : index.findClassFile(binaryName);
+        if (classFile == null) return;
+        renderer.scope(classFile, method == null ? null : getScope(method));
+    }
+
+    /**
+     * Computes the name and descriptor of a method. Constructors may get synthetic parameters from the compiler, so all
+     * of them are kept. Only the name is returned if a type can't be resolved, keeping every overload.
+     */
+    static String getScope(final PsiMethod method) {
+        if (method.isConstructor()) return "<init>";
+        final StringBuilder scope = new StringBuilder(method.getName()).append('(');
+        for (PsiParameter parameter : method.getParameterList().getParameters()) {
+            final String descriptor = getDescriptor(parameter.getType());
+            if (descriptor == null) return method.getName();
+            scope.append(descriptor);
+        }
+        scope.append(')');
+        final String returnDescriptor = getDescriptor(method.getReturnType());
+        if (returnDescriptor == null) return method.getName();
+        return scope.append(returnDescriptor).toString();
+    }
+
+    private static String getDescriptor(final PsiType type) {
+        if (type == null) return null;
+        final PsiType erased = TypeConversionUtil.erasure(type);
+        if (erased instanceof PsiArrayType) {
+            final String component = getDescriptor(((PsiArrayType) erased).getComponentType());
+            return component == null ? null : '[' + component;
+        }
+        if (erased instanceof PsiPrimitiveType) {
+            final String name = erased.getCanonicalText();
+            if ("void".equals(name)) return "V";
+            if ("boolean".equals(name)) return "Z";
+            if ("byte".equals(name)) return "B";
+            if ("char".equals(name)) return "C";
+            if ("short".equals(name)) return "S";
+            if ("int".equals(name)) return "I";
+            if ("long".equals(name)) return "J";
+            if ("float".equals(name)) return "F";
+            if ("double".equals(name)) return "D";
+            return null;
+        }
+        if (erased instanceof PsiClassType) {
+            final PsiClass psiClass = ((PsiClassType) erased).resolve();
+            final String name = psiClass == null ? null : ClassUtil.getJVMClassName(psiClass);
+            return name == null ? null : 'L' + name.replace('.', '/') + ';';
+        }
+        return null;
+    }
+}
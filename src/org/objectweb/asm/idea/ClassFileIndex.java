@@ -0,0 +1,438 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.ProjectTopics;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.roots.ModuleRootAdapter;
+import com.intellij.openapi.roots.ModuleRootEvent;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileCopyEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileCreateEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent;
+import com.intellij.psi.PsiAnonymousClass;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.PsiUtil;
+import com.intellij.util.messages.MessageBusConnection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the binary name of each class found in the output directories of the project, such as <code>a.b.Outer</code>,
+ * <code>a.b.Outer$Inner</code>, <code>a.b.Outer$1</code> or <code>a.b.Outer$1Local</code>, to its class file. The index
+ * is built on a pooled thread on first use, then kept up to date from VFS events, so that looking up a class file
+ * doesn't hit the file system and anonymous and local classes can be found and listed.
+ * <p/>
+ * Lookups never wait for the index: until it is built, class files are looked up in each output directory, local
+ * classes aren't found and nested classes aren't listed. Background tasks which need them can {@link #waitUntilBuilt()}.
+ */
+public class ClassFileIndex {
+    private static final String CLASS_SUFFIX = ".class";
+
+    private final Project project;
+
+    // null until the index is built, or after the output directories have changed
+    private Index index;
+    // the VFS events received while the index is built, replayed once it is done, or null if no build is running
+    private List<VFileEvent> pendingEvents;
+    // incremented when the index is dropped, so that a build started before is discarded
+    private int generation;
+
+    public ClassFileIndex(final Project project) {
+        this.project = project;
+        final MessageBusConnection connection = project.getMessageBus().connect(project);
+        connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkFileListener() {
+            public void before(final List<? extends VFileEvent> events) {
+            }
+
+            public void after(final List<? extends VFileEvent> events) {
+                update(events);
+            }
+        });
+        connection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
+            @Override
+            public void rootsChanged(final ModuleRootEvent event) {
+                invalidate();
+            }
+        });
+    }
+
+    public static ClassFileIndex getInstance(Project project) {
+        return ServiceManager.getService(project, ClassFileIndex.class);
+    }
+
+    /**
+     * @return true if the index has been built, else it is being built and local classes can't be found yet
+     */
+    public synchronized boolean isBuilt() {
+        if (index != null) return true;
+        scheduleBuild();
+        return false;
+    }
+
+    /**
+     * Waits until the index is built, unless the project is closed meanwhile. Must be called from a background thread,
+     * outside of any read action, since the index is built in read actions.
+     */
+    public void waitUntilBuilt() {
+        synchronized (this) {
+            while (index == null && !project.isDisposed()) {
+                scheduleBuild();
+                try {
+                    wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                ProgressManager.checkCanceled();
+            }
+        }
+    }
+
+    /**
+     * @param binaryName the binary name of a class, for example <code>a.b.Outer$Inner</code>
+     * @return its class file, or null if it isn't in any output directory
+     */
+    public VirtualFile findClassFile(final String binaryName) {
+        synchronized (this) {
+            if (isBuilt()) {
+                final VirtualFile file = index.classes.get(binaryName);
+                return file != null && file.isValid() ? file : null;
+            }
+        }
+        // not indexed yet: probe the output directories, which is all the index would do for a single class
+        final String path = binaryName.replace('.', '/') + CLASS_SUFFIX;
+        for (String root : getOutputRoots()) {
+            final VirtualFile rootFile = LocalFileSystem.getInstance().findFileByPath(root);
+            final VirtualFile file = rootFile == null ? null : rootFile.findFileByRelativePath(path);
+            if (file != null && file.isValid()) return file;
+        }
+        return null;
+    }
+
+    /**
+     * Lists the classes nested in a class, directly or not, including local and anonymous classes.
+     *
+     * @param binaryName the binary name of a class
+     * @return the binary names of the nested classes, sorted, or an empty list if the index isn't built yet
+     */
+    public synchronized List<String> getNestedClasses(final String binaryName) {
+        final List<String> result = new ArrayList<String>();
+        if (!isBuilt()) return result;
+        final Set<String> candidates = index.nestedClasses.get(topLevelName(binaryName));
+        if (candidates != null) {
+            final String prefix = binaryName + '$';
+            for (String name : candidates) {
+                if (name.startsWith(prefix)) result.add(name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /**
+     * Finds a local class, which the compiler names after its enclosing class, a number and its simple name.
+     *
+     * @param outerBinaryName the binary name of the class enclosing the local class
+     * @param simpleName      the simple name of the local class
+     * @return the binary name of the local class, or null if it can't be found or the index isn't built yet
+     */
+    public synchronized String findLocalClass(final String outerBinaryName, final String simpleName) {
+        String found = null;
+        final String prefix = outerBinaryName + '$';
+        for (String name : getNestedClasses(outerBinaryName)) {
+            final String suffix = name.substring(prefix.length());
+            if (suffix.endsWith(simpleName) && suffix.length() > simpleName.length() && isDigits(suffix.substring(0, suffix.length() - simpleName.length()))) {
+                if (found == null || name.length() < found.length()) found = name;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Computes the name the compiler gives to a class, including anonymous and local classes which are named after
+     * their enclosing class. Must be called in a read action.
+     *
+     * @param psiClass a class of the project
+     * @return its binary name, or null if it can't be determined
+     */
+    public String getBinaryName(final PsiClass psiClass) {
+        if (psiClass instanceof PsiAnonymousClass) {
+            final PsiClass outer = PsiTreeUtil.getParentOfType(psiClass, PsiClass.class);
+            final String outerName = outer == null ? null : getBinaryName(outer);
+            if (outerName == null) return null;
+            // anonymous classes are numbered in the order they appear in their enclosing class
+            int index = 0;
+            for (PsiAnonymousClass anonymousClass : PsiTreeUtil.findChildrenOfType(outer, PsiAnonymousClass.class)) {
+                if (PsiTreeUtil.getParentOfType(anonymousClass, PsiClass.class) == outer) {
+                    index++;
+                    if (anonymousClass == psiClass) return outerName + '$' + index;
+                }
+            }
+            return null;
+        }
+        final PsiClass containingClass = psiClass.getContainingClass();
+        if (containingClass != null) {
+            final String containingName = getBinaryName(containingClass);
+            return containingName == null ? null : containingName + '$' + psiClass.getName();
+        }
+        if (PsiUtil.isLocalClass(psiClass)) {
+            final PsiClass outer = PsiTreeUtil.getParentOfType(psiClass, PsiClass.class);
+            final String outerName = outer == null ? null : getBinaryName(outer);
+            return outerName == null ? null : findLocalClass(outerName, psiClass.getName());
+        }
+        return psiClass.getQualifiedName();
+    }
+
+    private synchronized void invalidate() {
+        index = null;
+        pendingEvents = null;
+        generation++;
+        notifyAll();
+    }
+
+    private synchronized void scheduleBuild() {
+        if (index != null || pendingEvents != null || project.isDisposed()) return;
+        pendingEvents = new ArrayList<VFileEvent>();
+        final int buildGeneration = generation;
+        ApplicationManager.getApplication().executeOnPooledThread(new Runnable() {
+            public void run() {
+                build(buildGeneration);
+            }
+        });
+    }
+
+    /**
+     * Walks the output directories, one read action per directory so that write actions aren't held up for the whole
+     * walk. The events received meanwhile are replayed on the new index, which makes up for the changes the walk missed.
+     */
+    private void build(final int buildGeneration) {
+        Index built = null;
+        boolean complete = false;
+        try {
+            built = new Index(ApplicationManager.getApplication().runReadAction(new Computable<List<String>>() {
+                public List<String> compute() {
+                    return getOutputRoots();
+                }
+            }));
+            for (final String root : built.roots) {
+                final Index walked = built;
+                ApplicationManager.getApplication().runReadAction(new Runnable() {
+                    public void run() {
+                        if (project.isDisposed()) return;
+                        final VirtualFile rootFile = LocalFileSystem.getInstance().findFileByPath(root);
+                        if (rootFile != null) walked.addAll(rootFile, "");
+                    }
+                });
+            }
+            complete = true;
+        } finally {
+            synchronized (this) {
+                // dropped meanwhile, the next lookup starts another build; or failed, and it will be tried again
+                if (buildGeneration == generation) {
+                    final List<VFileEvent> events = pendingEvents;
+                    pendingEvents = null;
+                    if (complete && built.update(events)) index = built;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the paths of the output directories, in the order of the modules. Must be called in a read action.
+     */
+    private List<String> getOutputRoots() {
+        final List<String> roots = new ArrayList<String>();
+        if (project.isDisposed()) return roots;
+        for (Module module : ModuleManager.getInstance(project).getModules()) {
+            final CompilerModuleExtension cme = CompilerModuleExtension.getInstance(module);
+            if (cme == null) continue;
+            for (String url : cme.getOutputRootUrls(true)) {
+                final String root = VfsUtil.urlToPath(url);
+                if (!roots.contains(root)) roots.add(root);
+            }
+        }
+        return roots;
+    }
+
+    private synchronized void update(final List<? extends VFileEvent> events) {
+        if (index != null) {
+            if (!index.update(events)) invalidate();
+        } else if (pendingEvents != null) {
+            pendingEvents.addAll(events);
+        }
+    }
+
+    private static String topLevelName(final String binaryName) {
+        final int dollar = binaryName.indexOf('$', binaryName.lastIndexOf('.') + 1);
+        return dollar < 0 ? binaryName : binaryName.substring(0, dollar);
+    }
+
+    private static boolean isDigits(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isDigit(s.charAt(i))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The class files of the output directories, at some point in time.
+     */
+    private static class Index {
+        private final Map<String, VirtualFile> classes = new HashMap<String, VirtualFile>();
+        // binary name of a top level class -> binary names of its nested, local and anonymous classes
+        private final Map<String, Set<String>> nestedClasses = new HashMap<String, Set<String>>();
+        // paths of the output directories, in the order of the modules
+        private final List<String> roots;
+
+        private Index(final List<String> roots) {
+            this.roots = roots;
+        }
+
+        /**
+         * @return false if the index can't be updated and must be built again
+         */
+        private boolean update(final List<? extends VFileEvent> events) {
+            for (VFileEvent event : events) {
+                if (event instanceof VFileCreateEvent) {
+                    added(event.getFile());
+                } else if (event instanceof VFileCopyEvent) {
+                    final VFileCopyEvent copy = (VFileCopyEvent) event;
+                    added(copy.getNewParent().findChild(copy.getNewChildName()));
+                } else if (event instanceof VFileDeleteEvent) {
+                    removed(event.getPath());
+                } else if (event instanceof VFileMoveEvent || event instanceof VFilePropertyChangeEvent
+                        && VirtualFile.PROP_NAME.equals(((VFilePropertyChangeEvent) event).getPropertyName())) {
+                    // compilers don't move nor rename their output, so this is simply rebuilt if it ever happens
+                    if (getRelativeName(event.getPath()) != null || event.getFile() != null && getRelativeName(event.getFile().getPath()) != null) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void added(final VirtualFile file) {
+            if (file == null) return;
+            final String name = getRelativeName(file.getPath());
+            if (name == null) return;
+            if (file.isDirectory()) {
+                addAll(file, name.length() == 0 ? "" : name + '.');
+            } else if (name.endsWith(CLASS_SUFFIX)) {
+                add(name.substring(0, name.length() - CLASS_SUFFIX.length()), file);
+            }
+        }
+
+        private void removed(final String path) {
+            final String name = getRelativeName(path);
+            if (name == null) return;
+            if (name.endsWith(CLASS_SUFFIX)) {
+                remove(name.substring(0, name.length() - CLASS_SUFFIX.length()));
+            } else {
+                // a whole directory
+                final String prefix = name.length() == 0 ? "" : name + '.';
+                for (Iterator<String> it = classes.keySet().iterator(); it.hasNext(); ) {
+                    final String className = it.next();
+                    if (className.startsWith(prefix)) {
+                        it.remove();
+                        removeNested(className);
+                    }
+                }
+            }
+        }
+
+        private void addAll(final VirtualFile directory, final String packagePrefix) {
+            for (VirtualFile child : directory.getChildren()) {
+                final String name = child.getName();
+                if (child.isDirectory()) {
+                    addAll(child, packagePrefix + name + '.');
+                } else if (name.endsWith(CLASS_SUFFIX)) {
+                    add(packagePrefix + name.substring(0, name.length() - CLASS_SUFFIX.length()), child);
+                }
+            }
+        }
+
+        private void add(final String binaryName, final VirtualFile file) {
+            // the first output directory wins, as when looking the class up in each of them
+            final VirtualFile previous = classes.get(binaryName);
+            if (previous != null && previous.isValid() && !previous.equals(file)) return;
+            classes.put(binaryName, file);
+            final String topLevelName = topLevelName(binaryName);
+            if (!topLevelName.equals(binaryName)) {
+                Set<String> nested = nestedClasses.get(topLevelName);
+                if (nested == null) {
+                    nested = new LinkedHashSet<String>();
+                    nestedClasses.put(topLevelName, nested);
+                }
+                nested.add(binaryName);
+            }
+        }
+
+        private void remove(final String binaryName) {
+            classes.remove(binaryName);
+            removeNested(binaryName);
+        }
+
+        private void removeNested(final String binaryName) {
+            final String topLevelName = topLevelName(binaryName);
+            final Set<String> nested = nestedClasses.get(topLevelName);
+            if (nested != null) {
+                nested.remove(binaryName);
+                if (nested.isEmpty()) nestedClasses.remove(topLevelName);
+            }
+        }
+
+        /**
+         * @return the path relative to the output directory containing it, with dots as separators, or null if the path
+         *         is not in an output directory
+         */
+        private String getRelativeName(final String path) {
+            for (String root : roots) {
+                if (path.equals(root)) return "";
+                if (path.startsWith(root) && path.charAt(root.length()) == '/') {
+                    return path.substring(root.length() + 1).replace('/', '.');
+                }
+            }
+            return null;
+        }
+    }
+}
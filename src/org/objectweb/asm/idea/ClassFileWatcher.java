@@ -0,0 +1,73 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.BulkFileListener;
+import com.intellij.openapi.vfs.newvfs.events.VFileDeleteEvent;
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
+import com.intellij.util.Alarm;
+import org.objectweb.asm.idea.config.ASMPluginComponent;
+
+import java.util.List;
+
+/**
+ * Refreshes the outline when the class file it displays, or the class file of one of its inner classes, is written by
+ * the compiler. Other files are ignored, so that rebuilding a project only triggers one rendering, once the writes
+ * have settled down.
+ */
+class ClassFileWatcher implements BulkFileListener {
+    // delay after the last write before the outline is refreshed
+    private static final int DEBOUNCE_MS = 300;
+
+    private final Project project;
+    private final OutlineRenderer renderer;
+    private final Alarm alarm;
+
+    ClassFileWatcher(final Project project, final OutlineRenderer renderer) {
+        this.project = project;
+        this.renderer = renderer;
+        this.alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    }
+
+    public void before(final List<? extends VFileEvent> events) {
+    }
+
+    public void after(final List<? extends VFileEvent> events) {
+        final VirtualFile file = renderer.getFile();
+        if (file == null || !project.getComponent(ASMPluginComponent.class).isLiveRefresh()) return;
+        final String path = file.getPath();
+        if (!path.endsWith(".class")) return;
+        final String innerClassPrefix = path.substring(0, path.length() - ".class".length()) + '$';
+        for (VFileEvent event : events) {
+            if (event instanceof VFileDeleteEvent) continue;
+            final String eventPath = event.getPath();
+            if (eventPath.equals(path) || eventPath.startsWith(innerClassPrefix) && eventPath.endsWith(".class")) {
+                alarm.cancelAllRequests();
+                alarm.addRequest(new Runnable() {
+                    public void run() {
+                        if (!project.isDisposed()) renderer.refresh();
+                    }
+                }, DEBOUNCE_MS);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import reloc.org.objectweb.asm.ClassReader;
+import reloc.org.objectweb.asm.Opcodes;
+import reloc.org.objectweb.asm.tree.ClassNode;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Project level cache of parsed class files, so that the views, the code of the methods left out of a skeleton and the
+ * analyses of a class share one {@link ClassNode} instead of decoding the class file again. Entries are keyed by class
+ * file and only valid for the modification stamp and reader flags they were parsed at. Nodes are softly referenced, so
+ * that the garbage collector can reclaim them under memory pressure, and the cache holds models of at most
+ * {@link #MAX_CLASS_BYTES} of class files, evicting the least recently used first.
+ */
+public class ClassModelCache {
+    private static final int MAX_CLASS_BYTES = 4 * 1024 * 1024;
+
+    private final LinkedHashMap<VirtualFile, Entry> entries = new LinkedHashMap<VirtualFile, Entry>(16, 0.75f, true);
+    private long size;
+
+    public static ClassModelCache getInstance(final Project project) {
+        return ServiceManager.getService(project, ClassModelCache.class);
+    }
+
+    /**
+     * Returns the parsed class of a class file, parsing it if it isn't cached or has changed since. Must be called in a
+     * read action, so that the contents match the modification stamp of the file.
+     *
+     * @param file  the class file
+     * @param bytes the contents of the class file
+     * @param flags the {@link ClassReader} flags to parse the class with
+     * @return the parsed class, which must not be modified
+     */
+    public ClassNode getModel(final VirtualFile file, final byte[] bytes, final int flags) {
+        final long stamp = file.getModificationStamp();
+        synchronized (this) {
+            final Entry entry = entries.get(file);
+            if (entry != null && entry.stamp == stamp && entry.flags == flags) {
+                final ClassNode node = entry.node.get();
+                if (node != null) return node;
+            }
+        }
+        final ClassNode node = new ClassNode(Opcodes.ASM5);
+        new ClassReader(bytes).accept(node, flags);
+        synchronized (this) {
+            final Entry previous = entries.put(file, new Entry(stamp, flags, bytes.length, node));
+            if (previous != null) size -= previous.weight;
+            size += bytes.length;
+            evict();
+        }
+        return node;
+    }
+
+    private void evict() {
+        for (Iterator<Map.Entry<VirtualFile, Entry>> it = entries.entrySet().iterator(); size > MAX_CLASS_BYTES && it.hasNext(); ) {
+            size -= it.next().getValue().weight;
+            it.remove();
+        }
+    }
+
+    private static class Entry {
+        private final long stamp;
+        private final int flags;
+        // the size of the class file
+        private final int weight;
+        private final SoftReference<ClassNode> node;
+
+        private Entry(final long stamp, final int flags, final int weight, final ClassNode node) {
+            this.stamp = stamp;
+            this.flags = flags;
+            this.weight = weight;
+            this.node = new SoftReference<ClassNode>(node);
+        }
+    }
+}
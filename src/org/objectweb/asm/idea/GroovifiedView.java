@@ -37,7 +37,7 @@ import com.intellij.openapi.wm.ToolWindowManager;
 public class GroovifiedView extends ACodeView {
 
 	public GroovifiedView(final Project project, KeymapManager keymapManager, final ToolWindowManager toolWindowManager) {
-		super(toolWindowManager, keymapManager, project, "groovy");
+		super(toolWindowManager, keymapManager, project, "groovy", BytecodeRenderer.View.GROOVIFIED);
 	}
 
 	public static GroovifiedView getInstance(Project project) {
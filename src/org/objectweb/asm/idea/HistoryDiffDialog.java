@@ -0,0 +1,88 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+
+import javax.swing.*;
+import java.awt.*;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Lets the user pick two versions of a class file from the {@link BytecodeHistory}, to compare them.
+ */
+class HistoryDiffDialog extends DialogWrapper {
+    private final JComboBox beforeComboBox;
+    private final JComboBox afterComboBox;
+
+    /**
+     * @param snapshots the versions of the class file, oldest first, at least two of them
+     */
+    HistoryDiffDialog(final Project project, final List<BytecodeHistory.Snapshot> snapshots) {
+        super(project, false);
+        final Item[] items = new Item[snapshots.size()];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = new Item(snapshots.get(items.length - 1 - i));
+        }
+        beforeComboBox = new JComboBox(items);
+        beforeComboBox.setSelectedIndex(1);
+        afterComboBox = new JComboBox(items);
+        afterComboBox.setSelectedIndex(0);
+        setTitle("Compare versions of the class");
+        init();
+    }
+
+    @Override
+    protected JComponent createCenterPanel() {
+        final JPanel panel = new JPanel(new GridLayout(2, 2, 8, 4));
+        panel.add(new JLabel("Version"));
+        panel.add(beforeComboBox);
+        panel.add(new JLabel("Compared with"));
+        panel.add(afterComboBox);
+        return panel;
+    }
+
+    BytecodeHistory.Snapshot getBefore() {
+        return ((Item) beforeComboBox.getSelectedItem()).snapshot;
+    }
+
+    BytecodeHistory.Snapshot getAfter() {
+        return ((Item) afterComboBox.getSelectedItem()).snapshot;
+    }
+
+    static String getTitle(final BytecodeHistory.Snapshot snapshot) {
+        return "Version of " + DateFormat.getTimeInstance(DateFormat.MEDIUM).format(new Date(snapshot.getTimestamp()));
+    }
+
+    private static class Item {
+        private final BytecodeHistory.Snapshot snapshot;
+
+        private Item(final BytecodeHistory.Snapshot snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public String toString() {
+            return getTitle(snapshot);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.projectRoots.Sdk;
+import com.intellij.openapi.roots.LanguageLevelModuleExtension;
+import com.intellij.openapi.roots.LanguageLevelProjectExtension;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.pom.java.LanguageLevel;
+
+import javax.lang.model.SourceVersion;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles a single Java source file in memory with the system Java compiler, for the fast preview mode. The text of
+ * the document is compiled as it is, against the output directories and libraries of its module, and the class files
+ * are kept in memory: the document doesn't need to be saved, no build is started and the output directories are never
+ * written. The classes may differ from the ones of the build, which can use another compiler or other options.
+ */
+class InMemoryCompiler {
+    // the Java version in an SDK version string such as 1.6.0_45 or 11.0.2, or in a language level name such as JDK_1_7
+    private static final Pattern VERSION = Pattern.compile("(\\d+)(?:[._](\\d+))?");
+
+    private final List<String> options;
+
+    /**
+     * Takes the classpath, the language level and the SDK of a module. Must be called in a read action.
+     */
+    InMemoryCompiler(final Module module) {
+        options = new ArrayList<String>(Arrays.asList("-g", "-proc:none", "-implicit:none", "-nowarn"));
+        options.add("-classpath");
+        options.add(OrderEnumerator.orderEntries(module).withoutSdk().recursively().getPathsList().getPathsString());
+        // the class files target the SDK of the module, as with javac of that SDK, unless the language level is higher
+        final Sdk sdk = ModuleRootManager.getInstance(module).getSdk();
+        final int sdkVersion = getSdkVersion(sdk);
+        final int source = getLanguageVersion(module);
+        final int target = Math.max(source, sdkVersion);
+        final Set<SourceVersion> supported = isAvailable() ? ToolProvider.getSystemJavaCompiler().getSourceVersions() : null;
+        final int latest = getLatestVersion(supported);
+        // without -target, javac targets the latest version it knows
+        int effectiveTarget = latest;
+        if (source > 0 && isSupported(supported, source)) {
+            options.add("-source");
+            options.add(toOption(source));
+            if (isSupported(supported, target)) {
+                options.add("-target");
+                options.add(toOption(target));
+                effectiveTarget = target;
+            }
+        }
+        // javac 9 and later reject -bootclasspath when targeting 9 or later, and the classes of such SDKs are in modules
+        if (sdkVersion <= 8 && effectiveTarget <= 8) {
+            final String bootClasspath = OrderEnumerator.orderEntries(module).sdkOnly().getPathsList().getPathsString();
+            if (bootClasspath.length() > 0) {
+                options.add("-bootclasspath");
+                options.add(bootClasspath);
+            }
+        } else if (sdkVersion >= 9 && effectiveTarget >= 9 && sdk.getHomePath() != null) {
+            options.add("--system");
+            options.add(sdk.getHomePath());
+        }
+    }
+
+    /**
+     * @return false if the IDE runs on a JRE, which has no system Java compiler
+     */
+    static boolean isAvailable() {
+        return ToolProvider.getSystemJavaCompiler() != null;
+    }
+
+    /**
+     * @return the Java version of the language level of the module, or of the project by default, or 0 if unknown
+     */
+    private static int getLanguageVersion(final Module module) {
+        final LanguageLevelModuleExtension extension = ModuleRootManager.getInstance(module).getModuleExtension(LanguageLevelModuleExtension.class);
+        LanguageLevel level = extension == null ? null : extension.getLanguageLevel();
+        if (level == null) level = LanguageLevelProjectExtension.getInstance(module.getProject()).getLanguageLevel();
+        return level == null ? 0 : parseVersion(level.name());
+    }
+
+    /**
+     * @return the Java version of the SDK of a module, or 0 if unknown
+     */
+    private static int getSdkVersion(final Sdk sdk) {
+        return sdk == null || sdk.getVersionString() == null ? 0 : parseVersion(sdk.getVersionString());
+    }
+
+    /**
+     * @return the Java version in a version string, for example 7 for 1.7.0_45, or 0 if none is found
+     */
+    static int parseVersion(final String version) {
+        final Matcher matcher = VERSION.matcher(version);
+        if (!matcher.find()) return 0;
+        final int major = Integer.parseInt(matcher.group(1));
+        return major == 1 && matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : major;
+    }
+
+    private static boolean isSupported(final Set<SourceVersion> supported, final int version) {
+        if (supported == null) return false;
+        for (SourceVersion sourceVersion : supported) {
+            if (sourceVersion.name().equals("RELEASE_" + version)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the latest Java version the system compiler supports, or 0 if unknown
+     */
+    private static int getLatestVersion(final Set<SourceVersion> supported) {
+        int latest = 0;
+        if (supported == null) return latest;
+        for (SourceVersion sourceVersion : supported) {
+            if (sourceVersion.name().startsWith("RELEASE_")) {
+                latest = Math.max(latest, Integer.parseInt(sourceVersion.name().substring("RELEASE_".length())));
+            }
+        }
+        return latest;
+    }
+
+    private static String toOption(final int version) {
+        return version < 9 ? "1." + version : String.valueOf(version);
+    }
+
+    /**
+     * Compiles a source file.
+     *
+     * @param fileName the name of the source file, which must match its public class
+     * @param text     the source code
+     * @param errors   receives the errors of the compiler, one line each, if the file doesn't compile
+     * @return the contents of each class file by binary name, such as <code>a.b.Outer$Inner</code>, or null if the file
+     *         doesn't compile
+     */
+    Map<String, byte[]> compile(final String fileName, final CharSequence text, final List<String> errors) throws IOException {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<String, ByteArrayOutputStream>();
+        final StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(null, null, null);
+        final JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(final Location location, final String className, final JavaFileObject.Kind kind, final FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                        outputs.put(className, out);
+                        return out;
+                    }
+                };
+            }
+        };
+        final JavaFileObject source = new SimpleJavaFileObject(URI.create("mem:///" + fileName), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+                return text;
+            }
+        };
+        final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final boolean success;
+        try {
+            success = compiler.getTask(null, fileManager, diagnostics, options, null, Collections.singletonList(source)).call();
+        } finally {
+            fileManager.close();
+        }
+        if (!success) {
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() != Diagnostic.Kind.ERROR) continue;
+                final String message = diagnostic.getMessage(null);
+                errors.add(diagnostic.getLineNumber() > 0 ? diagnostic.getLineNumber() + ": " + message : message);
+            }
+            return null;
+        }
+        final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+        for (Map.Entry<String, ByteArrayOutputStream> entry : outputs.entrySet()) {
+            classes.put(entry.getKey(), entry.getValue().toByteArray());
+        }
+        return classes;
+    }
+}
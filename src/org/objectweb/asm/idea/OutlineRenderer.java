@@ -0,0 +1,283 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
+import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassOwner;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.ui.content.Content;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the class file displayed in the tool window and renders its tabs lazily: a tab is only rendered when
+ * it is visible, and only once for a given class file. A tab which is never selected is never rendered. Showing another
+ * class file cancels the renderings of the previous one. When live refresh is enabled, the class file is rendered again
+ * each time it is recompiled, see {@link ClassFileWatcher}. When following the caret, only the method at the caret is
+ * rendered, see {@link CaretMethodTracker}. All methods must be called on the EDT.
+ */
+public class OutlineRenderer {
+    private final Project project;
+
+    private VirtualFile file;
+    // the source the class file has been compiled from, looked up on first use
+    private VirtualFile sourceFile;
+    private boolean sourceResolved;
+    // the method the rendering is narrowed to, or null for the whole class
+    private String scope;
+    // incremented each time a class file is shown, so that late results for a previous class are ignored
+    private int generation;
+    // views for which a rendering of the current class file has been requested
+    private final Set<BytecodeRenderer.View> requested = EnumSet.noneOf(BytecodeRenderer.View.class);
+    // renderings started for the current class file
+    private final List<RenderTask> tasks = new ArrayList<RenderTask>();
+
+    public OutlineRenderer(final Project project) {
+        this.project = project;
+        project.getMessageBus().connect(project).subscribe(VirtualFileManager.VFS_CHANGES, new ClassFileWatcher(project, this));
+        EditorFactory.getInstance().getEventMulticaster().addCaretListener(new CaretMethodTracker(project, this), project);
+        EditorFactory.getInstance().getEventMulticaster().addCaretListener(new SourceLineTracker(project, this), project);
+    }
+
+    public static OutlineRenderer getInstance(Project project) {
+        return ServiceManager.getService(project, OutlineRenderer.class);
+    }
+
+    /**
+     * Displays a class file in the tool window. Only the selected tab is rendered right away.
+     *
+     * @param file the class file, or null if no class file could be found
+     */
+    public void show(final VirtualFile file) {
+        show(file, null);
+    }
+
+    /**
+     * Displays a class file in the tool window. Only the selected tab is rendered right away.
+     *
+     * @param file       the class file, or null if no class file could be found
+     * @param sourceFile the source the class has been compiled from, or null to look it up when needed
+     */
+    public void show(final VirtualFile file, final VirtualFile sourceFile) {
+        if (file == null || !file.equals(this.file)) scope = null;
+        reset(file);
+        if (sourceFile != null) {
+            this.sourceFile = sourceFile;
+            sourceResolved = true;
+        }
+        if (file == null) {
+            displayMessage(Constants.NO_CLASS_FOUND);
+            return;
+        }
+        final ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow("ASM");
+        toolWindow.activate(new Runnable() {
+            public void run() {
+                renderSelected(toolWindow);
+            }
+        });
+    }
+
+    /**
+     * Displays a message instead of a class file in all the views of the tool window, for example why no class file
+     * could be found.
+     *
+     * @param message the text to display, as comments
+     */
+    public void showMessage(final String message) {
+        scope = null;
+        reset(null);
+        displayMessage(message);
+    }
+
+    private void displayMessage(final String message) {
+        ApplicationManager.getApplication().runWriteAction(new Runnable() {
+            public void run() {
+                for (BytecodeRenderer.View view : BytecodeRenderer.View.values()) {
+                    getCodeView(project, view).setCode(null, message);
+                }
+            }
+        });
+        requested.addAll(EnumSet.allOf(BytecodeRenderer.View.class));
+        ToolWindowManager.getInstance(project).getToolWindow("ASM").activate(null);
+    }
+
+    /**
+     * Renders the current class file again, without activating the tool window. The file is looked up again by path in
+     * case the compiler has replaced it.
+     */
+    public void refresh() {
+        if (file == null) return;
+        final VirtualFile refreshed = file.isValid() ? file : LocalFileSystem.getInstance().findFileByPath(file.getPath());
+        if (refreshed == null) return;
+        reset(refreshed);
+        final ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow("ASM");
+        if (toolWindow != null) renderSelected(toolWindow);
+    }
+
+    /**
+     * Narrows the rendering to a method, without activating the tool window. Nothing is done if the given class file and
+     * method are already displayed.
+     *
+     * @param file  the class file
+     * @param scope null to render the whole class, else the method to render, see {@link MethodFilter}
+     */
+    public void scope(final VirtualFile file, final String scope) {
+        if (file.equals(this.file) && (scope == null ? this.scope == null : scope.equals(this.scope))) return;
+        this.scope = scope;
+        reset(file);
+        final ToolWindow toolWindow = ToolWindowManager.getInstance(project).getToolWindow("ASM");
+        if (toolWindow != null) renderSelected(toolWindow);
+    }
+
+    /**
+     * @return the class file currently displayed, or null if none
+     */
+    public VirtualFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return the source file of the class currently displayed, or null if it is unknown
+     */
+    public VirtualFile getSourceFile() {
+        if (!sourceResolved && file != null) {
+            sourceResolved = true;
+            sourceFile = findSourceFile(file);
+        }
+        return sourceFile;
+    }
+
+    private VirtualFile findSourceFile(final VirtualFile classFile) {
+        // inner classes have no PSI of their own, their source is the one of their top level class
+        VirtualFile topLevelFile = classFile;
+        final String name = classFile.getNameWithoutExtension();
+        final int dollar = name.indexOf('$');
+        if (dollar > 0 && classFile.getParent() != null) {
+            final VirtualFile file = classFile.getParent().findChild(name.substring(0, dollar) + ".class");
+            if (file != null) topLevelFile = file;
+        }
+        final PsiFile psiFile = PsiManager.getInstance(project).findFile(topLevelFile);
+        if (!(psiFile instanceof PsiClassOwner)) return null;
+        for (PsiClass psiClass : ((PsiClassOwner) psiFile).getClasses()) {
+            final PsiFile source = psiClass.getNavigationElement().getContainingFile();
+            if (source != null && source.getVirtualFile() != null && !source.getVirtualFile().equals(topLevelFile)) {
+                return source.getVirtualFile();
+            }
+        }
+        return null;
+    }
+
+    private void reset(final VirtualFile file) {
+        if (file == null || !file.equals(this.file)) {
+            sourceFile = null;
+            sourceResolved = false;
+        }
+        this.file = file;
+        generation++;
+        requested.clear();
+        for (RenderTask task : tasks) {
+            task.cancel();
+        }
+        tasks.clear();
+    }
+
+    private void renderSelected(final ToolWindow toolWindow) {
+        final Content content = toolWindow.getContentManager().getSelectedContent();
+        if (content != null && content.getComponent() instanceof ACodeView) {
+            render(((ACodeView) content.getComponent()).getView());
+        }
+    }
+
+    /**
+     * Renders a view of the current class file, unless it has already been done.
+     */
+    public void render(final BytecodeRenderer.View view) {
+        if (file == null || !requested.add(view)) return;
+        tasks.add(RenderTask.schedule(project, file, EnumSet.of(view), generation, scope));
+    }
+
+    /**
+     * Renders the code of a method of the current class file, which has been left out of the bytecode view.
+     *
+     * @param method the name of the method followed by its descriptor
+     */
+    public void renderMethod(final String method) {
+        if (file == null) return;
+        tasks.add(RenderTask.scheduleMethod(project, file, method, generation));
+    }
+
+    /**
+     * Updates the views with the result of a {@link RenderTask}, unless another class file has been shown since.
+     */
+    void publish(final VirtualFile file, final int generation, final Map<BytecodeRenderer.View, CharSequence> texts) {
+        if (generation != this.generation) return;
+        ApplicationManager.getApplication().runWriteAction(new Runnable() {
+            public void run() {
+                for (Map.Entry<BytecodeRenderer.View, CharSequence> entry : texts.entrySet()) {
+                    getCodeView(project, entry.getKey()).setCode(file, entry.getValue());
+                }
+            }
+        });
+    }
+
+    /**
+     * Inserts the code of a method in the bytecode view, unless another class file has been shown since.
+     */
+    void publishMethod(final VirtualFile file, final int generation, final String method, final String code, final LineNumberIndex lineNumbers) {
+        if (generation != this.generation) return;
+        ApplicationManager.getApplication().runWriteAction(new Runnable() {
+            public void run() {
+                getCodeView(project, BytecodeRenderer.View.BYTECODE).expandMethodStub(method, code, lineNumbers);
+            }
+        });
+    }
+
+    /**
+     * @return the recorded versions of the displayed class file, oldest first, see {@link BytecodeHistory}
+     */
+    public List<BytecodeHistory.Snapshot> getSnapshots() {
+        if (file == null) return new ArrayList<BytecodeHistory.Snapshot>();
+        return BytecodeHistory.getInstance().getSnapshots(file.getPath());
+    }
+
+    static ACodeView getCodeView(final Project project, final BytecodeRenderer.View view) {
+        switch (view) {
+            case GROOVIFIED:
+                return GroovifiedView.getInstance(project);
+            case ASMIFIED:
+                return BytecodeASMified.getInstance(project);
+            default:
+                return BytecodeOutline.getInstance(project);
+        }
+    }
+}
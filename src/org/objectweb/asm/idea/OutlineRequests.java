@@ -0,0 +1,452 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.compiler.CompileContext;
+import com.intellij.openapi.compiler.CompileScope;
+import com.intellij.openapi.compiler.CompileStatusNotification;
+import com.intellij.openapi.compiler.CompilerManager;
+import com.intellij.openapi.compiler.CompilerMessage;
+import com.intellij.openapi.compiler.CompilerMessageCategory;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.impl.text.PsiAwareTextEditorImpl;
+import com.intellij.openapi.fileTypes.StdFileTypes;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtil;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassOwner;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.BinaryLightVirtualFile;
+import com.intellij.util.Alarm;
+import org.objectweb.asm.idea.config.ASMPluginComponent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+/**
+ * Handles the requests of a project to display the bytecode of a file. The latest request wins: each new request
+ * cancels the up-to-date check of the previous one if it hasn't started yet, ignores its compilation result and
+ * cancels its rendering, so that only the newest class reaches the tool window. No thread is blocked while waiting for
+ * the compiler. All methods must be called on the EDT.
+ * <p/>
+ * Asking the compiler whether a file is up to date can take hundreds of milliseconds in large projects, so the
+ * modification stamps of each source file are recorded along with the time stamp of its class file whenever it has been
+ * displayed. As long as neither the source file, its document nor the class file have changed, the class file is
+ * displayed again without asking the compiler.
+ * <p/>
+ * Files which need to be compiled are gathered for {@link #COMPILE_BATCH_DELAY} milliseconds, then built by a single
+ * compilation, so that showing several files in a row, from the project view or while switching editors, only starts
+ * one build. The latest request is displayed, and the state of every file of the build is recorded, so that showing
+ * the others afterwards doesn't need the compiler.
+ * <p/>
+ * In fast preview mode, Java files are compiled in memory instead, see {@link InMemoryCompiler}.
+ *
+ * @author Cédric Champeau
+ */
+public class OutlineRequests {
+    private static final int MAX_TRACKED_SOURCES = 256;
+    private static final int COMPILE_BATCH_DELAY = 200;
+
+    private final Project project;
+
+    // identifies the latest request, results of older requests are dropped
+    private int current;
+    // the up-to-date check of the latest request
+    private Future<?> pending;
+    // the state of the source files the last time their class was displayed, least recently displayed first
+    private final Map<VirtualFile, SourceState> displayedSources = new LinkedHashMap<VirtualFile, SourceState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<VirtualFile, SourceState> eldest) {
+            return size() > MAX_TRACKED_SOURCES;
+        }
+    };
+
+    // the source files waiting for the next compilation, and the alarm which starts it
+    private final Map<VirtualFile, CompileRequest> compileBatch = new LinkedHashMap<VirtualFile, CompileRequest>();
+    private final Alarm compileAlarm;
+    // whether a build started by compileBatch is running, the files requested meanwhile are compiled once it finishes
+    private boolean compiling;
+
+    public OutlineRequests(final Project project) {
+        this.project = project;
+        this.compileAlarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, project);
+    }
+
+    public static OutlineRequests getInstance(Project project) {
+        return ServiceManager.getService(project, OutlineRequests.class);
+    }
+
+    /**
+     * Displays a class file which doesn't need to be compiled.
+     *
+     * @param classFile the class file, or null if none could be found
+     */
+    public void show(final VirtualFile classFile) {
+        display(next(), classFile, null);
+    }
+
+    /**
+     * Compiles a source file if it isn't up to date, then displays the class file found at the caret position, or the
+     * first class of the file. In fast preview mode, a Java file is compiled in memory instead of being built.
+     *
+     * @param file    the source file
+     * @param psiFile the PSI of the source file
+     */
+    public void compileAndShow(final VirtualFile file, final PsiFile psiFile) {
+        final int request = next();
+        final Module module = ModuleUtil.findModuleForPsiElement(psiFile);
+        if (module != null && file.getFileType() == StdFileTypes.JAVA && InMemoryCompiler.isAvailable()
+                && project.getComponent(ASMPluginComponent.class).isFastPreview()) {
+            preview(request, module, file, psiFile);
+            return;
+        }
+        final CompilerModuleExtension cme = module == null ? null : CompilerModuleExtension.getInstance(module);
+        final CompilerManager compilerManager = CompilerManager.getInstance(project);
+        final VirtualFile[] files = {file};
+        final Application application = ApplicationManager.getApplication();
+        application.runWriteAction(new Runnable() {
+            public void run() {
+                FileDocumentManager.getInstance().saveAllDocuments();
+            }
+        });
+        // taken before compiling, so that changes made meanwhile will be compiled by the next request
+        final long fileStamp = file.getModificationStamp();
+        final long documentStamp = getDocumentStamp(file);
+        final SourceState state = displayedSources.get(file);
+        if (state != null) {
+            // the class at the caret may not be the one displayed last
+            final VirtualFile classFile = findClassFile(psiFile, null);
+            if (state.isUpToDate(fileStamp, documentStamp, classFile)) {
+                display(request, classFile, file);
+                return;
+            }
+        }
+        pending = application.executeOnPooledThread(new Runnable() {
+            public void run() {
+                final CompileScope compileScope = compilerManager.createFilesCompileScope(files);
+                final VirtualFile[] outputDirectories = cme == null ? null : cme.getOutputRoots(true);
+                final boolean upToDate = outputDirectories != null && compilerManager.isUpToDate(compileScope);
+                application.invokeLater(new Runnable() {
+                    public void run() {
+                        if (request != current || project.isDisposed()) return;
+                        if (upToDate) {
+                            displayCompiled(request, findClassFile(psiFile, null), file, fileStamp, documentStamp);
+                            return;
+                        }
+                        compileLater(new CompileRequest(request, file, psiFile, fileStamp, documentStamp));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Adds a source file to the next compilation, which is started after {@link #COMPILE_BATCH_DELAY} milliseconds unless
+     * it has already been scheduled. A newer request for the same file replaces the previous one. While a build is
+     * running, the files are gathered until it finishes, then compiled by one follow-up build.
+     */
+    private void compileLater(final CompileRequest compileRequest) {
+        compileBatch.remove(compileRequest.file);
+        compileBatch.put(compileRequest.file, compileRequest);
+        if (compiling || compileAlarm.getActiveRequestCount() > 0) return;
+        compileAlarm.addRequest(new Runnable() {
+            public void run() {
+                compileBatch();
+            }
+        }, COMPILE_BATCH_DELAY);
+    }
+
+    /**
+     * Compiles the gathered source files in one build, then records the state of each one and displays the class of the
+     * latest request if it is part of the build.
+     */
+    private void compileBatch() {
+        if (compiling || compileBatch.isEmpty() || project.isDisposed()) return;
+        final List<CompileRequest> batch = new ArrayList<CompileRequest>(compileBatch.values());
+        compileBatch.clear();
+        final VirtualFile[] files = new VirtualFile[batch.size()];
+        for (int i = 0; i < files.length; i++) {
+            files[i] = batch.get(i).file;
+        }
+        final CompilerManager compilerManager = CompilerManager.getInstance(project);
+        // some file systems only keep seconds
+        final long startTime = System.currentTimeMillis() / 1000 * 1000;
+        compiling = true;
+        compilerManager.compile(compilerManager.createFilesCompileScope(files), new CompileStatusNotification() {
+            public void finished(boolean aborted, int errors, int warnings, final CompileContext compileContext) {
+                compiling = false;
+                if (project.isDisposed()) return;
+                // the files with errors, unless some errors can't be attributed to a file
+                final Set<VirtualFile> failed = new HashSet<VirtualFile>();
+                boolean failedAll = false;
+                for (CompilerMessage message : compileContext.getMessages(CompilerMessageCategory.ERROR)) {
+                    if (message.getVirtualFile() == null) {
+                        failedAll = true;
+                    } else {
+                        failed.add(message.getVirtualFile());
+                    }
+                }
+                for (CompileRequest compileRequest : batch) {
+                    if (!compileRequest.psiFile.isValid()) continue;
+                    VirtualFile classFile = null;
+                    if (errors == 0 || !failedAll && !failed.contains(compileRequest.file)) {
+                        classFile = findClassFile(compileRequest.psiFile, null);
+                        // when other files have errors, the class may not have been written by this build
+                        if (errors > 0 && classFile != null && classFile.getTimeStamp() < startTime) classFile = null;
+                    }
+                    record(compileRequest.file, classFile, compileRequest.fileStamp, compileRequest.documentStamp);
+                    display(compileRequest.request, classFile, compileRequest.file);
+                }
+                // the files requested during the build, unless the alarm is about to compile them anyway
+                if (compileAlarm.getActiveRequestCount() == 0) compileBatch();
+            }
+        });
+    }
+
+    /**
+     * Compiles the current text of a Java file in memory, then displays the class found at the caret position, or the
+     * first class of the file.
+     */
+    private void preview(final int request, final Module module, final VirtualFile file, final PsiFile psiFile) {
+        final Document document = FileDocumentManager.getInstance().getDocument(file);
+        final String text = document == null ? psiFile.getText() : document.getText();
+        final InMemoryCompiler compiler = new InMemoryCompiler(module);
+        final Application application = ApplicationManager.getApplication();
+        pending = application.executeOnPooledThread(new Runnable() {
+            public void run() {
+                final List<String> errors = new ArrayList<String>();
+                Map<String, byte[]> compiled;
+                try {
+                    compiled = compiler.compile(file.getName(), text, errors);
+                } catch (IOException e) {
+                    compiled = null;
+                    errors.add(e.toString());
+                } catch (RuntimeException e) {
+                    // for example options the system compiler doesn't accept
+                    compiled = null;
+                    errors.add(e.toString());
+                }
+                final Map<String, byte[]> classes = compiled;
+                application.invokeLater(new Runnable() {
+                    public void run() {
+                        if (request != current || project.isDisposed()) return;
+                        if (classes == null) {
+                            pending = null;
+                            OutlineRenderer.getInstance(project).showMessage(getPreviewFailure(file, errors));
+                        } else {
+                            display(request, findClassFile(psiFile, classes), file);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * @return the text displayed when a file couldn't be compiled in memory, as a comment listing the errors
+     */
+    private static String getPreviewFailure(final VirtualFile file, final List<String> errors) {
+        final StringBuilder message = new StringBuilder("// couldn't compile ").append(file.getName()).append(" in memory");
+        for (String error : errors) {
+            for (String line : error.split("\n")) {
+                message.append("\n// ").append(line);
+            }
+        }
+        return message.toString();
+    }
+
+    /**
+     * Starts a new request, superseding the previous one.
+     *
+     * @return the identifier of the new request
+     */
+    private int next() {
+        // a running up-to-date check is not interrupted, its result will simply be ignored
+        if (pending != null) pending.cancel(false);
+        pending = null;
+        return ++current;
+    }
+
+    private void display(final int request, final VirtualFile classFile, final VirtualFile sourceFile) {
+        if (request != current) return;
+        pending = null;
+        OutlineRenderer.getInstance(project).show(classFile, sourceFile);
+    }
+
+    /**
+     * Displays the class file compiled from a source file, and records the state of both so that the next request for
+     * the same source file can skip the compiler if nothing has changed.
+     *
+     * @param fileStamp     the modification stamp of the source file when it was saved for compilation
+     * @param documentStamp the modification stamp of its document at the same time, or -1 if it had none
+     */
+    private void displayCompiled(final int request, final VirtualFile classFile, final VirtualFile sourceFile, final long fileStamp, final long documentStamp) {
+        if (request != current) return;
+        record(sourceFile, classFile, fileStamp, documentStamp);
+        display(request, classFile, sourceFile);
+    }
+
+    /**
+     * Records the state of a source file and of one of its class files, which is up to date, or forgets it if it
+     * couldn't be compiled. The class files displayed for the same state of the source file are recorded together.
+     */
+    private void record(final VirtualFile sourceFile, final VirtualFile classFile, final long fileStamp, final long documentStamp) {
+        if (classFile == null) {
+            displayedSources.remove(sourceFile);
+            return;
+        }
+        SourceState state = displayedSources.get(sourceFile);
+        if (state == null || !state.isSameSource(fileStamp, documentStamp)) {
+            state = new SourceState(fileStamp, documentStamp);
+            displayedSources.put(sourceFile, state);
+        }
+        state.add(classFile);
+    }
+
+    private static long getDocumentStamp(final VirtualFile file) {
+        final Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+        return document == null ? -1 : document.getModificationStamp();
+    }
+
+    /**
+     * Finds the class file of the class at the caret, or of the first class of the file, in the {@link ClassFileIndex}
+     * or among classes compiled in memory.
+     *
+     * @param compiled the contents of the classes compiled in memory by binary name, or null to look in the index
+     */
+    private VirtualFile findClassFile(final PsiFile psiFile, final Map<String, byte[]> compiled) {
+        return ApplicationManager.getApplication().runReadAction(new Computable<VirtualFile>() {
+          public VirtualFile compute() {
+            if( psiFile instanceof PsiClassOwner ) {
+              FileEditor editor = FileEditorManager.getInstance( psiFile.getProject() ).getSelectedEditor( psiFile.getVirtualFile() );
+              int caretOffset = editor == null ? -1 : ((PsiAwareTextEditorImpl)editor).getEditor().getCaretModel().getOffset();
+              if( caretOffset >= 0 ) {
+                PsiClass psiClass = findClassAtCaret( psiFile, caretOffset );
+                if( psiClass != null ) {
+                  return getClassFile( psiClass );
+                }
+              }
+              PsiClassOwner psiJavaFile = (PsiClassOwner)psiFile;
+              for( PsiClass psiClass : psiJavaFile.getClasses() ) {
+                final VirtualFile file = getClassFile( psiClass );
+                if( file != null ) {
+                  return file;
+                }
+              }
+            }
+            return null;
+          }
+
+          private VirtualFile getClassFile( PsiClass psiClass ) {
+            final ClassFileIndex index = ClassFileIndex.getInstance( project );
+            final String binaryName = index.getBinaryName( psiClass );
+            if( binaryName == null ) {
+              return null;
+            }
+            if( compiled == null ) {
+              return index.findClassFile( binaryName );
+            }
+            final byte[] bytes = compiled.get( binaryName );
+            // named after the binary name, since the history of the class is keyed by the path of the file
+            return bytes == null ? null : new BinaryLightVirtualFile( binaryName + ".class", bytes );
+          }
+
+          private PsiClass findClassAtCaret( PsiFile psiFile, int caretOffset ) {
+            PsiElement elem = psiFile.findElementAt( caretOffset );
+            while( elem != null ) {
+              if( elem instanceof PsiClass ) {
+                return (PsiClass)elem;
+              }
+              elem = elem.getParent();
+            }
+            return null;
+          }
+        });
+    }
+
+    /**
+     * The state of a source file and of one of its class files, when the class file was known to be up to date.
+     */
+    private static class SourceState {
+        private final long fileStamp;
+        private final long documentStamp;
+        private final Map<VirtualFile, Long> classTimeStamps = new HashMap<VirtualFile, Long>();
+
+        private SourceState(final long fileStamp, final long documentStamp) {
+            this.fileStamp = fileStamp;
+            this.documentStamp = documentStamp;
+        }
+
+        private void add(final VirtualFile classFile) {
+            classTimeStamps.put(classFile, classFile.getTimeStamp());
+        }
+
+        private boolean isSameSource(final long fileStamp, final long documentStamp) {
+            return fileStamp == this.fileStamp && documentStamp == this.documentStamp;
+        }
+
+        /**
+         * Tells if a class file of the source file is still up to date. This is not the case if the source file has been
+         * modified, if the class file hasn't been recorded for this state of the source file, or if it has been removed
+         * or rewritten since, for example by a rebuild.
+         */
+        private boolean isUpToDate(final long fileStamp, final long documentStamp, final VirtualFile classFile) {
+            if (classFile == null || !isSameSource(fileStamp, documentStamp)) return false;
+            final Long classTimeStamp = classTimeStamps.get(classFile);
+            return classTimeStamp != null && classFile.isValid() && classFile.getTimeStamp() == classTimeStamp;
+        }
+    }
+
+    /**
+     * A source file waiting to be compiled, with the request it has to be displayed for.
+     */
+    private static class CompileRequest {
+        private final int request;
+        private final VirtualFile file;
+        private final PsiFile psiFile;
+        private final long fileStamp;
+        private final long documentStamp;
+
+        private CompileRequest(final int request, final VirtualFile file, final PsiFile psiFile, final long fileStamp, final long documentStamp) {
+            this.request = request;
+            this.file = file;
+            this.psiFile = psiFile;
+            this.fileStamp = fileStamp;
+            this.documentStamp = documentStamp;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.components.PersistentStateComponent;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.components.State;
+import com.intellij.openapi.components.Storage;
+import org.jdom.Element;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Application level cache of rendered views, shared by all projects. Entries are keyed by a digest of the class file
+ * contents, the reader flags and the code style of the view, so that library and JDK classes are only rendered once.
+ * The cache is bounded by a memory budget and evicts the least recently used entries first.
+ */
+@State(
+        name = "ASMRenderCache",
+        storages = {
+                @Storage(id = "other", file = "$APP_CONFIG$/asm-bytecode-outline.xml")
+        }
+)
+public class RenderCache implements PersistentStateComponent<Element> {
+    public static final int DEFAULT_MAX_SIZE_MB = 16;
+
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final LinkedHashMap<Key, CharSequence> entries = new LinkedHashMap<Key, CharSequence>(16, 0.75f, true);
+    private int maxSizeMB = DEFAULT_MAX_SIZE_MB;
+    private long size;
+    private long hits;
+    private long misses;
+
+    public static RenderCache getInstance() {
+        return ServiceManager.getService(RenderCache.class);
+    }
+
+    /**
+     * Computes the digest identifying the contents of a class file.
+     */
+    public static byte[] digest(final byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized CharSequence get(final Key key) {
+        final CharSequence text = entries.get(key);
+        if (text == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return text;
+    }
+
+    /**
+     * @param text the text of the view, which must not change afterwards
+     */
+    public synchronized void put(final Key key, final CharSequence text) {
+        final CharSequence previous = entries.put(key, text);
+        if (previous != null) size -= weight(previous);
+        size += weight(text);
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+        hits = 0;
+        misses = 0;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return the approximate memory used by the cached texts, in bytes
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized int getMaxSizeMB() {
+        return maxSizeMB;
+    }
+
+    public synchronized void setMaxSizeMB(final int maxSizeMB) {
+        this.maxSizeMB = maxSizeMB;
+        evict();
+    }
+
+    private void evict() {
+        final long maxSize = maxSizeMB * 1024L * 1024L;
+        for (Iterator<Map.Entry<Key, CharSequence>> it = entries.entrySet().iterator(); size > maxSize && it.hasNext(); ) {
+            size -= weight(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static long weight(final CharSequence text) {
+        final int chars = text instanceof TextBuffer ? ((TextBuffer) text).capacity() : text.length();
+        return ENTRY_OVERHEAD + 2L * chars;
+    }
+
+    // -------------------- state persistence
+
+    public synchronized Element getState() {
+        Element root = new Element("state");
+        Element cacheNode = new Element("cache");
+        cacheNode.setAttribute("maxSizeMB", String.valueOf(maxSizeMB));
+        root.addContent(cacheNode);
+        return root;
+    }
+
+    public synchronized void loadState(final Element state) {
+        Element cacheNode = state.getChild("cache");
+        if (cacheNode != null) {
+            final String maxSizeStr = cacheNode.getAttributeValue("maxSizeMB");
+            if (maxSizeStr != null) maxSizeMB = Integer.valueOf(maxSizeStr);
+        }
+    }
+
+    /**
+     * Identifies a view of a class file rendered with some given settings.
+     */
+    public static class Key {
+        private final byte[] digest;
+        private final int flags;
+        private final String style;
+        private final BytecodeRenderer.View view;
+
+        /**
+         * @param digest the digest of the class file, see {@link RenderCache#digest(byte[])}
+         * @param flags  the reader flags the view is rendered with
+         * @param style  describes the other settings the text of the view depends on, for example the Groovy code style
+         * @param view   the rendered view
+         */
+        public Key(final byte[] digest, final int flags, final String style, final BytecodeRenderer.View view) {
+            this.digest = digest;
+            this.flags = flags;
+            this.style = style;
+            this.view = view;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return flags == key.flags && style.equals(key.style) && view == key.view && Arrays.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Arrays.hashCode(digest);
+            result = 31 * result + flags;
+            result = 31 * result + style.hashCode();
+            result = 31 * result + view.hashCode();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.LangDataKeys;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.fileChooser.FileChooser;
+import com.intellij.openapi.fileChooser.FileChooserDescriptorFactory;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.Messages;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import java.io.File;
+
+/**
+ * Renders every class of the files, packages or modules selected in the project view, see {@link BatchRenderTask}. The
+ * classes are listed in the tool window, and their views can also be written to a directory.
+ */
+public class RenderClassesAction extends AnAction {
+    private static final String[] OPTIONS = {"Tool Window", "Directory...", "Cancel"};
+
+    @Override
+    public void update(final AnActionEvent e) {
+        final Project project = e.getData(PlatformDataKeys.PROJECT);
+        e.getPresentation().setEnabled(project != null && (getFiles(e).length > 0 || getModules(e).length > 0));
+    }
+
+    public void actionPerformed(final AnActionEvent e) {
+        final Project project = e.getData(PlatformDataKeys.PROJECT);
+        if (project == null) return;
+        final VirtualFile[] files = getFiles(e);
+        final Module[] modules = getModules(e);
+        final int option = Messages.showDialog(project, "Render the bytecode of every selected class to:", "Render Bytecode", OPTIONS, 0, Messages.getQuestionIcon());
+        File outputDirectory = null;
+        if (option == 1) {
+            final VirtualFile directory = FileChooser.chooseFile(project, FileChooserDescriptorFactory.createSingleFolderDescriptor());
+            if (directory == null) return;
+            outputDirectory = VfsUtil.virtualToIoFile(directory);
+        } else if (option != 0) {
+            return;
+        }
+        ProgressManager.getInstance().run(new BatchRenderTask(project, files, modules, outputDirectory));
+    }
+
+    private static VirtualFile[] getFiles(final AnActionEvent e) {
+        final VirtualFile[] files = e.getData(PlatformDataKeys.VIRTUAL_FILE_ARRAY);
+        return files == null ? VirtualFile.EMPTY_ARRAY : files;
+    }
+
+    private static Module[] getModules(final AnActionEvent e) {
+        final Module[] modules = e.getData(LangDataKeys.MODULE_CONTEXT_ARRAY);
+        if (modules != null) return modules;
+        final Module module = e.getData(LangDataKeys.MODULE_CONTEXT);
+        return module == null ? Module.EMPTY_ARRAY : new Module[]{module};
+    }
+}
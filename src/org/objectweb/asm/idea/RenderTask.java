@@ -0,0 +1,343 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.application.Application;
+import com.intellij.openapi.application.ApplicationAdapter;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.fileTypes.StdFileTypes;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.codeStyle.CodeStyleSettings;
+import com.intellij.psi.codeStyle.CodeStyleSettingsManager;
+import org.objectweb.asm.idea.config.ASMPluginComponent;
+import reloc.org.objectweb.asm.ClassReader;
+import reloc.org.objectweb.asm.ClassVisitor;
+import reloc.org.objectweb.asm.MethodVisitor;
+import reloc.org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Renders some tabs of the tool window for a class file. Parsing and textifying happen on a pooled thread, inside a
+ * read action which is cancelled as soon as a write action is about to start, then restarted once the write action is
+ * done. The result is handed back to the {@link OutlineRenderer} on the EDT, unless the task has been cancelled.
+ * <p/>
+ * A task can also render the code of a single method, which has been left out of a skeleton of the bytecode view.
+ *
+ * @author Cédric Champeau
+ */
+class RenderTask implements Runnable {
+    private final Project project;
+    private final VirtualFile file;
+    private final Set<BytecodeRenderer.View> views;
+    private final int generation;
+    private final String method;
+    private final String scope;
+
+    // the contents of the class file, once read
+    private volatile byte[] bytes;
+    private volatile boolean cancelled;
+    // the indicator of the current read action, if any
+    private volatile ProgressIndicator indicator;
+
+    private RenderTask(final Project project, final VirtualFile file, final Set<BytecodeRenderer.View> views, final int generation, final String method, final String scope) {
+        this.project = project;
+        this.file = file;
+        this.views = views;
+        this.generation = generation;
+        this.method = method;
+        this.scope = scope;
+    }
+
+    /**
+     * Schedules the rendering of the given class file on a pooled thread.
+     *
+     * @param project    the project instance
+     * @param file       the class file
+     * @param views      the views to render
+     * @param generation the generation of the {@link OutlineRenderer} the result is meant for
+     * @param scope      null to render the whole class, else the method to render, see {@link MethodFilter}
+     * @return the scheduled task
+     */
+    static RenderTask schedule(final Project project, final VirtualFile file, final Set<BytecodeRenderer.View> views, final int generation, final String scope) {
+        return start(new RenderTask(project, file, views, generation, null, scope));
+    }
+
+    /**
+     * Schedules the rendering of the code of a method on a pooled thread.
+     *
+     * @param project    the project instance
+     * @param file       the class file
+     * @param method     the name of the method followed by its descriptor
+     * @param generation the generation of the {@link OutlineRenderer} the result is meant for
+     * @return the scheduled task
+     */
+    static RenderTask scheduleMethod(final Project project, final VirtualFile file, final String method, final int generation) {
+        return start(new RenderTask(project, file, EnumSet.of(BytecodeRenderer.View.BYTECODE), generation, method, null));
+    }
+
+    private static RenderTask start(final RenderTask task) {
+        ApplicationManager.getApplication().executeOnPooledThread(task);
+        return task;
+    }
+
+    /**
+     * Stops the task as soon as possible. Its result, if any, is dropped.
+     */
+    void cancel() {
+        cancelled = true;
+        final ProgressIndicator current = indicator;
+        if (current != null) current.cancel();
+    }
+
+    public void run() {
+        if (cancelled) return;
+        file.refresh(false, false);
+        Map<BytecodeRenderer.View, CharSequence> texts = null;
+        while (texts == null) {
+            if (cancelled || project.isDisposed()) return;
+            try {
+                texts = renderInCancellableReadAction();
+            } catch (IOException e) {
+                return;
+            }
+        }
+        // hashing and compressing the snapshot is kept off the event dispatch thread
+        if (method == null && !cancelled) BytecodeHistory.getInstance().record(file.getPath(), bytes);
+        // so is indexing the line numbers of the bytecode view
+        final CharSequence bytecode = texts.get(BytecodeRenderer.View.BYTECODE);
+        final LineNumberIndex lineNumbers;
+        if (bytecode instanceof BytecodeTextBuffer) {
+            lineNumbers = ((BytecodeTextBuffer) bytecode).getLineNumbers();
+        } else {
+            lineNumbers = bytecode == null ? null : LineNumberIndex.build(bytecode);
+        }
+        final Map<BytecodeRenderer.View, CharSequence> result = texts;
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+            public void run() {
+                if (cancelled || project.isDisposed()) return;
+                if (method == null) {
+                    OutlineRenderer.getInstance(project).publish(file, generation, result);
+                } else {
+                    OutlineRenderer.getInstance(project).publishMethod(file, generation, method, bytecode.toString(), lineNumbers);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs {@link #render()} in a read action which gets cancelled if a write action is requested meanwhile.
+     *
+     * @return the rendered views, or null if the read action has been cancelled and should be restarted
+     */
+    private Map<BytecodeRenderer.View, CharSequence> renderInCancellableReadAction() throws IOException {
+        final Application application = ApplicationManager.getApplication();
+        final ProgressIndicator indicator = new ProgressIndicatorBase();
+        this.indicator = indicator;
+        if (cancelled) return null;
+        final ApplicationAdapter listener = new ApplicationAdapter() {
+            @Override
+            public void beforeWriteActionStart(final Object action) {
+                indicator.cancel();
+            }
+        };
+        final Map<BytecodeRenderer.View, CharSequence> result = new EnumMap<BytecodeRenderer.View, CharSequence>(BytecodeRenderer.View.class);
+        final IOException[] failure = {null};
+        application.addApplicationListener(listener);
+        try {
+            ProgressManager.getInstance().runProcess(new Runnable() {
+                public void run() {
+                    application.runReadAction(new Runnable() {
+                        public void run() {
+                            try {
+                                result.putAll(render());
+                            } catch (IOException e) {
+                                failure[0] = e;
+                            }
+                        }
+                    });
+                }
+            }, indicator);
+        } catch (ProcessCanceledException e) {
+            return null;
+        } finally {
+            application.removeApplicationListener(listener);
+            this.indicator = null;
+        }
+        if (failure[0] != null) throw failure[0];
+        return result;
+    }
+
+    /**
+     * Reads the .class file and processes it through the printers of the requested views. When rendering a single
+     * method, its code is returned as the text of the bytecode view.
+     *
+     * @return the text of each requested view
+     */
+    private Map<BytecodeRenderer.View, CharSequence> render() throws IOException {
+        ProgressManager.checkCanceled();
+        final byte[] bytes = file.contentsToByteArray();
+        this.bytes = bytes;
+        final ASMPluginComponent config = project.getComponent(ASMPluginComponent.class);
+        if (method != null) {
+            final Map<BytecodeRenderer.View, CharSequence> code = new EnumMap<BytecodeRenderer.View, CharSequence>(BytecodeRenderer.View.class);
+            final BytecodeRenderer renderer = createRenderer(project, false);
+            final int modelFlags = renderer.getModelFlags();
+            code.put(BytecodeRenderer.View.BYTECODE, renderer.renderMethodCode(ClassModelCache.getInstance(project).getModel(file, bytes, modelFlags), modelFlags, method));
+            return code;
+        }
+        return render(project, file, bytes, views, scope, config.isLazyMethods() && scope == null);
+    }
+
+    /**
+     * Processes a class file through the printers of the requested views, in a single traversal, with the settings of
+     * the project. Views which are found in the {@link RenderCache} are not rendered again. The printers write
+     * into {@link TextBuffer}s, which are shared by the cache and the views without being copied. The ASMified code is
+     * indented while it is printed, unless the IDE formatter has been enabled in the settings. Must be called in a read
+     * action.
+     *
+     * @param project     the project the settings are taken from
+     * @param file        the class file, whose parsed class is shared through the {@link ClassModelCache}, or null to
+     *                    parse the contents without caching them
+     * @param bytes       the contents of the class file
+     * @param views       the views to render
+     * @param scope       null to render the whole class, else the method to render, see {@link MethodFilter}
+     * @param lazyMethods true to leave out the code of the methods from the bytecode view, see {@link SkeletonTextifier}
+     * @return the text of each requested view
+     */
+    static Map<BytecodeRenderer.View, CharSequence> render(final Project project, final VirtualFile file, final byte[] bytes, final Set<BytecodeRenderer.View> views, final String scope, final boolean lazyMethods) {
+        final ASMPluginComponent config = project.getComponent(ASMPluginComponent.class);
+        final BytecodeRenderer renderer = createRenderer(project, lazyMethods);
+        final boolean reformat = config.isReformatASMified();
+        final RenderCache cache = RenderCache.getInstance();
+        final byte[] digest = RenderCache.digest(bytes);
+        final Map<BytecodeRenderer.View, CharSequence> texts = new EnumMap<BytecodeRenderer.View, CharSequence>(BytecodeRenderer.View.class);
+        final Set<BytecodeRenderer.View> missing = EnumSet.noneOf(BytecodeRenderer.View.class);
+        for (BytecodeRenderer.View view : views) {
+            final CharSequence text = cache.get(cacheKey(digest, renderer, reformat, scope, view));
+            if (text == null) {
+                missing.add(view);
+            } else {
+                texts.put(view, text);
+            }
+        }
+        if (!missing.isEmpty()) {
+            final Map<BytecodeRenderer.View, CharSequence> rendered = new EnumMap<BytecodeRenderer.View, CharSequence>(renderText(project, file, bytes, renderer, missing, scope));
+            ProgressManager.checkCanceled();
+            final CharSequence asmified = rendered.get(BytecodeRenderer.View.ASMIFIED);
+            if (asmified != null && reformat) {
+                PsiFile psiFile = PsiFileFactory.getInstance(project).createFileFromText("asm.java", asmified.toString());
+                CodeStyleManager.getInstance(project).reformat(psiFile);
+                rendered.put(BytecodeRenderer.View.ASMIFIED, psiFile.getText());
+            }
+            for (Map.Entry<BytecodeRenderer.View, CharSequence> entry : rendered.entrySet()) {
+                cache.put(cacheKey(digest, renderer, reformat, scope, entry.getKey()), entry.getValue());
+            }
+            texts.putAll(rendered);
+        }
+        return texts;
+    }
+
+    private static Map<BytecodeRenderer.View, TextBuffer> renderText(final Project project, final VirtualFile file, final byte[] bytes, final BytecodeRenderer renderer, final Set<BytecodeRenderer.View> views, final String scope) {
+        if (file == null) return renderer.renderText(bytes, views, scope);
+        final int modelFlags = renderer.getModelFlags();
+        return renderer.renderText(ClassModelCache.getInstance(project).getModel(file, bytes, modelFlags), modelFlags, views, scope);
+    }
+
+    private static BytecodeRenderer createRenderer(final Project project, final boolean lazyMethods) {
+        final ASMPluginComponent config = project.getComponent(ASMPluginComponent.class);
+        return new BytecodeRenderer(readerFlags(config), config.getCodeStyle(), getIndent(project), lazyMethods) {
+            @Override
+            protected ClassVisitor decorate(final ClassVisitor visitor) {
+                return new CheckCanceledClassVisitor(visitor);
+            }
+        };
+    }
+
+    /**
+     * @return the {@link ClassReader} flags selected in the settings
+     */
+    static int readerFlags(final ASMPluginComponent config) {
+        int flags = 0;
+        if (config.isSkipDebug()) flags = flags | ClassReader.SKIP_DEBUG;
+        if (config.isSkipFrames()) flags = flags | ClassReader.SKIP_FRAMES;
+        if (config.isExpandFrames()) flags = flags | ClassReader.EXPAND_FRAMES;
+        if (config.isSkipCode()) flags = flags | ClassReader.SKIP_CODE;
+        return flags;
+    }
+
+    private static RenderCache.Key cacheKey(final byte[] digest, final BytecodeRenderer renderer, final boolean reformat, final String scope, final BytecodeRenderer.View view) {
+        String style;
+        switch (view) {
+            case GROOVIFIED:
+                style = renderer.getCodeStyle().name();
+                break;
+            case ASMIFIED:
+                style = reformat ? "reformat" : "indent:" + renderer.getIndent();
+                break;
+            case BYTECODE:
+                style = renderer.isLazyMethods() ? "skeleton" : "";
+                break;
+            default:
+                style = "";
+        }
+        if (scope != null) style += "@" + scope;
+        return new RenderCache.Key(digest, renderer.getFlags(view), style, view);
+    }
+
+    /**
+     * Builds the indentation of the ASMified code from the Java indent options of the project.
+     */
+    private static String getIndent(final Project project) {
+        final CodeStyleSettings settings = CodeStyleSettingsManager.getSettings(project);
+        if (settings.getIndentOptions(StdFileTypes.JAVA).USE_TAB_CHARACTER) return "\t";
+        final StringBuilder indent = new StringBuilder();
+        for (int i = 0; i < settings.getIndentOptions(StdFileTypes.JAVA).INDENT_SIZE; i++) {
+            indent.append(' ');
+        }
+        return indent.toString();
+    }
+
+    /**
+     * Checks for cancellation of the current render before each method, so that big classes can be interrupted.
+     */
+    private static class CheckCanceledClassVisitor extends ClassVisitor {
+        private CheckCanceledClassVisitor(final ClassVisitor cv) {
+            super(Opcodes.ASM5, cv);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String desc, final String signature, final String[] exceptions) {
+            ProgressManager.checkCanceled();
+            return super.visitMethod(access, name, desc, signature, exceptions);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+package org.objectweb.asm.idea;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.CaretAdapter;
+import com.intellij.openapi.editor.event.CaretEvent;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+
+/**
+ * Highlights, in the bytecode view, the instructions of the line at the caret of the source of the displayed class.
+ */
+class SourceLineTracker extends CaretAdapter {
+    private final Project project;
+    private final OutlineRenderer renderer;
+
+    SourceLineTracker(final Project project, final OutlineRenderer renderer) {
+        this.project = project;
+        this.renderer = renderer;
+    }
+
+    @Override
+    public void caretPositionChanged(final CaretEvent e) {
+        final Editor editor = e.getEditor();
+        if (editor.getProject() != project || renderer.getFile() == null) return;
+        final VirtualFile file = FileDocumentManager.getInstance().getFile(editor.getDocument());
+        if (file == null || !file.equals(renderer.getSourceFile())) return;
+        OutlineRenderer.getCodeView(project, BytecodeRenderer.View.BYTECODE).highlightSourceLine(e.getNewPosition().line + 1);
+    }
+}
@@ -35,6 +35,8 @@ import com.intellij.openapi.util.IconLoader;
 import org.jdom.Element;
 import org.jetbrains.annotations.Nls;
 import org.jetbrains.annotations.NotNull;
+import org.objectweb.asm.idea.BytecodeHistory;
+import org.objectweb.asm.idea.RenderCache;
 
 import javax.swing.*;
 
@@ -54,6 +56,11 @@ public class ASMPluginComponent implements ProjectComponent, Configurable, Persi
     private boolean skipDebug = false;
     private boolean skipCode = false;
     private boolean expandFrames = false;
+    private boolean reformatASMified = false;
+    private boolean lazyMethods = false;
+    private boolean liveRefresh = false;
+    private boolean followCaret = false;
+    private boolean fastPreview = false;
     private GroovyCodeStyle codeStyle = GroovyCodeStyle.LEGACY;
 
     private ASMPluginConfiguration configDialog;
@@ -151,6 +158,70 @@ public class ASMPluginComponent implements ProjectComponent, Configurable, Persi
         configDialog = null;
     }
 
+    public boolean isReformatASMified() {
+        return reformatASMified;
+    }
+
+    public void setReformatASMified(final boolean reformatASMified) {
+        this.reformatASMified = reformatASMified;
+    }
+
+    public boolean isLazyMethods() {
+        return lazyMethods;
+    }
+
+    public void setLazyMethods(final boolean lazyMethods) {
+        this.lazyMethods = lazyMethods;
+    }
+
+    public boolean isLiveRefresh() {
+        return liveRefresh;
+    }
+
+    public void setLiveRefresh(final boolean liveRefresh) {
+        this.liveRefresh = liveRefresh;
+    }
+
+    public boolean isFollowCaret() {
+        return followCaret;
+    }
+
+    public void setFollowCaret(final boolean followCaret) {
+        this.followCaret = followCaret;
+    }
+
+    public boolean isFastPreview() {
+        return fastPreview;
+    }
+
+    public void setFastPreview(final boolean fastPreview) {
+        this.fastPreview = fastPreview;
+    }
+
+    public int getRenderCacheSize() {
+        return RenderCache.getInstance().getMaxSizeMB();
+    }
+
+    public void setRenderCacheSize(final int renderCacheSize) {
+        RenderCache.getInstance().setMaxSizeMB(renderCacheSize);
+    }
+
+    public int getHistorySize() {
+        return BytecodeHistory.getInstance().getMaxSizeMB();
+    }
+
+    public void setHistorySize(final int historySize) {
+        BytecodeHistory.getInstance().setMaxSizeMB(historySize);
+    }
+
+    public boolean isSpillHistory() {
+        return BytecodeHistory.getInstance().isSpillToDisk();
+    }
+
+    public void setSpillHistory(final boolean spillHistory) {
+        BytecodeHistory.getInstance().setSpillToDisk(spillHistory);
+    }
+
     public boolean isExpandFrames() {
         return expandFrames;
     }
@@ -168,6 +239,11 @@ public class ASMPluginComponent implements ProjectComponent, Configurable, Persi
         asmNode.setAttribute("skipFrames", String.valueOf(skipFrames));
         asmNode.setAttribute("skipCode", String.valueOf(skipCode));
         asmNode.setAttribute("expandFrames", String.valueOf(expandFrames));
+        asmNode.setAttribute("reformatASMified", String.valueOf(reformatASMified));
+        asmNode.setAttribute("lazyMethods", String.valueOf(lazyMethods));
+        asmNode.setAttribute("liveRefresh", String.valueOf(liveRefresh));
+        asmNode.setAttribute("followCaret", String.valueOf(followCaret));
+        asmNode.setAttribute("fastPreview", String.valueOf(fastPreview));
         root.addContent(asmNode);
         Element groovyNode = new Element("groovy");
         groovyNode.setAttribute("codeStyle", codeStyle.toString());
@@ -186,6 +262,16 @@ public class ASMPluginComponent implements ProjectComponent, Configurable, Persi
             if (skipCodeStr!=null) skipCode = Boolean.valueOf(skipCodeStr);
             final String expandFramesStr = asmNode.getAttributeValue("expandFrames");
             if (expandFramesStr!=null) expandFrames = Boolean.valueOf(expandFramesStr);
+            final String reformatASMifiedStr = asmNode.getAttributeValue("reformatASMified");
+            if (reformatASMifiedStr!=null) reformatASMified = Boolean.valueOf(reformatASMifiedStr);
+            final String lazyMethodsStr = asmNode.getAttributeValue("lazyMethods");
+            if (lazyMethodsStr!=null) lazyMethods = Boolean.valueOf(lazyMethodsStr);
+            final String liveRefreshStr = asmNode.getAttributeValue("liveRefresh");
+            if (liveRefreshStr!=null) liveRefresh = Boolean.valueOf(liveRefreshStr);
+            final String followCaretStr = asmNode.getAttributeValue("followCaret");
+            if (followCaretStr!=null) followCaret = Boolean.valueOf(followCaretStr);
+            final String fastPreviewStr = asmNode.getAttributeValue("fastPreview");
+            if (fastPreviewStr!=null) fastPreview = Boolean.valueOf(fastPreviewStr);
         }
         Element groovyNode = state.getChild("groovy");
         if (groovyNode!=null) {
@@ -22,6 +22,8 @@ import com.intellij.openapi.components.State;
 import com.intellij.openapi.components.Storage;
 import com.intellij.openapi.ui.ComboBox;
 import com.intellij.ui.EnumComboBoxModel;
+import org.objectweb.asm.idea.BytecodeHistory;
+import org.objectweb.asm.idea.RenderCache;
 
 import javax.swing.*;
 import java.awt.*;
@@ -34,7 +36,14 @@ public class ASMPluginConfiguration {
     private JCheckBox skipFramesCheckBox;
     private JCheckBox skipCodeCheckBox;
     private JCheckBox expandFramesCheckBox;
+    private JCheckBox reformatASMifiedCheckBox;
+    private JCheckBox lazyMethodsCheckBox;
+    private JCheckBox liveRefreshCheckBox;
     private JComboBox groovyCodeStyleComboBox;
+    private JSpinner renderCacheSizeSpinner;
+    private JSpinner historySizeSpinner;
+    private JCheckBox spillHistoryCheckBox;
+    private JCheckBox fastPreviewCheckBox;
 
     public ASMPluginConfiguration() {
     }
@@ -48,7 +57,14 @@ public class ASMPluginConfiguration {
         skipFramesCheckBox.setSelected(data.isSkipFrames());
         skipCodeCheckBox.setSelected(data.isSkipCode());
         expandFramesCheckBox.setSelected(data.isExpandFrames());
+        reformatASMifiedCheckBox.setSelected(data.isReformatASMified());
+        lazyMethodsCheckBox.setSelected(data.isLazyMethods());
+        liveRefreshCheckBox.setSelected(data.isLiveRefresh());
         groovyCodeStyleComboBox.setSelectedItem(data.getCodeStyle());
+        renderCacheSizeSpinner.setValue(data.getRenderCacheSize());
+        historySizeSpinner.setValue(data.getHistorySize());
+        spillHistoryCheckBox.setSelected(data.isSpillHistory());
+        fastPreviewCheckBox.setSelected(data.isFastPreview());
     }
 
     public void getData(ASMPluginComponent data) {
@@ -56,7 +72,14 @@ public class ASMPluginConfiguration {
         data.setSkipFrames(skipFramesCheckBox.isSelected());
         data.setSkipCode(skipCodeCheckBox.isSelected());
         data.setExpandFrames(expandFramesCheckBox.isSelected());
+        data.setReformatASMified(reformatASMifiedCheckBox.isSelected());
+        data.setLazyMethods(lazyMethodsCheckBox.isSelected());
+        data.setLiveRefresh(liveRefreshCheckBox.isSelected());
         data.setCodeStyle((GroovyCodeStyle) groovyCodeStyleComboBox.getSelectedItem());
+        data.setRenderCacheSize((Integer) renderCacheSizeSpinner.getValue());
+        data.setHistorySize((Integer) historySizeSpinner.getValue());
+        data.setSpillHistory(spillHistoryCheckBox.isSelected());
+        data.setFastPreview(fastPreviewCheckBox.isSelected());
     }
 
     public boolean isModified(ASMPluginComponent data) {
@@ -64,7 +87,14 @@ public class ASMPluginConfiguration {
         if (skipFramesCheckBox.isSelected() != data.isSkipFrames()) return true;
         if (skipCodeCheckBox.isSelected() != data.isSkipCode()) return true;
         if (expandFramesCheckBox.isSelected() != data.isExpandFrames()) return true;
+        if (reformatASMifiedCheckBox.isSelected() != data.isReformatASMified()) return true;
+        if (lazyMethodsCheckBox.isSelected() != data.isLazyMethods()) return true;
+        if (liveRefreshCheckBox.isSelected() != data.isLiveRefresh()) return true;
         if (!groovyCodeStyleComboBox.getSelectedItem().equals(data.getCodeStyle())) return true;
+        if (!renderCacheSizeSpinner.getValue().equals(data.getRenderCacheSize())) return true;
+        if (!historySizeSpinner.getValue().equals(data.getHistorySize())) return true;
+        if (spillHistoryCheckBox.isSelected() != data.isSpillHistory()) return true;
+        if (fastPreviewCheckBox.isSelected() != data.isFastPreview()) return true;
         return false;
     }
 
@@ -72,6 +102,8 @@ public class ASMPluginConfiguration {
         ComboBoxModel model = new EnumComboBoxModel<GroovyCodeStyle>(GroovyCodeStyle.class);
         groovyCodeStyleComboBox = new ComboBox(model);
         groovyCodeStyleComboBox.setRenderer(new GroovyCodeStyleCellRenderer());
+        renderCacheSizeSpinner = new JSpinner(new SpinnerNumberModel(RenderCache.DEFAULT_MAX_SIZE_MB, 0, 1024, 1));
+        historySizeSpinner = new JSpinner(new SpinnerNumberModel(BytecodeHistory.DEFAULT_MAX_SIZE_MB, 0, 1024, 1));
     }
 
     private static class GroovyCodeStyleCellRenderer implements ListCellRenderer {
@@ -80,7 +112,7 @@ public class ASMPluginConfiguration {
         private GroovyCodeStyleCellRenderer() {
             labels = new EnumMap<GroovyCodeStyle, JLabel>(GroovyCodeStyle.class);
             for (GroovyCodeStyle codeStyle : GroovyCodeStyle.values()) {
-                labels.put(codeStyle, new JLabel(codeStyle.label));
+                labels.put(codeStyle, new JLabel(codeStyle.getLabel()));
             }
         }
 
@@ -0,0 +1,60 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea.lang;
+
+import com.intellij.openapi.fileTypes.LanguageFileType;
+import com.intellij.openapi.util.IconLoader;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+
+/**
+ * File type of the bytecode view. Using it instead of the Java file type avoids running the Java lexer over a text
+ * which isn't Java, which is both slow on large classes and highlights the wrong tokens.
+ */
+public class BytecodeFileType extends LanguageFileType {
+    public static final BytecodeFileType INSTANCE = new BytecodeFileType();
+    public static final String DEFAULT_EXTENSION = "bytecode";
+
+    private static final Icon ICON = IconLoader.getIcon("/images/asm.gif");
+
+    private BytecodeFileType() {
+        super(BytecodeLanguage.INSTANCE);
+    }
+
+    @NotNull
+    public String getName() {
+        return "Bytecode";
+    }
+
+    @NotNull
+    public String getDescription() {
+        return "ASM bytecode outline";
+    }
+
+    @NotNull
+    public String getDefaultExtension() {
+        return DEFAULT_EXTENSION;
+    }
+
+    public Icon getIcon() {
+        return ICON;
+    }
+}
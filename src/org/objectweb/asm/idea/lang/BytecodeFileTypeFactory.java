@@ -0,0 +1,34 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea.lang;
+
+import com.intellij.openapi.fileTypes.FileTypeConsumer;
+import com.intellij.openapi.fileTypes.FileTypeFactory;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Registers the {@link BytecodeFileType}.
+ */
+public class BytecodeFileTypeFactory extends FileTypeFactory {
+    @Override
+    public void createFileTypes(@NotNull final FileTypeConsumer consumer) {
+        consumer.consume(BytecodeFileType.INSTANCE, BytecodeFileType.DEFAULT_EXTENSION);
+    }
+}
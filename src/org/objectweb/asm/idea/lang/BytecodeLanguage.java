@@ -0,0 +1,34 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea.lang;
+
+import com.intellij.lang.Language;
+
+/**
+ * The language of the text printed by the ASM textifier, only used to attach a syntax highlighter to the bytecode
+ * view: there is no parser, and no PSI is ever built for it.
+ */
+public class BytecodeLanguage extends Language {
+    public static final BytecodeLanguage INSTANCE = new BytecodeLanguage();
+
+    private BytecodeLanguage() {
+        super("Bytecode");
+    }
+}
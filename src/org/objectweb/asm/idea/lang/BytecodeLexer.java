@@ -0,0 +1,255 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea.lang;
+
+import com.intellij.lexer.LexerBase;
+import com.intellij.psi.TokenType;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import reloc.org.objectweb.asm.util.Printer;
+
+/**
+ * Lexer of the text printed by the ASM textifier. Every token can be recognized from its first characters, so the
+ * lexer has a single state and can be restarted anywhere, which lets the editor only relex the lines that changed.
+ * Characters are classified with a lookup table and words are matched against a static hash table of opcodes and
+ * keywords, comparing the buffer in place: lexing doesn't allocate anything.
+ */
+public class BytecodeLexer extends LexerBase {
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte WORD = 2;
+    private static final byte DIGIT = 3;
+    private static final byte QUOTE = 4;
+    private static final byte SLASH = 5;
+    private static final byte MINUS = 6;
+
+    private static final byte[] CHAR_CLASSES = new byte[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) CHAR_CLASSES[c] = WORD;
+        for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASSES[c] = WORD;
+        for (char c = '0'; c <= '9'; c++) CHAR_CLASSES[c] = DIGIT;
+        // the characters of internal names and descriptors, so that each of them is a single token
+        for (char c : "_$;<>()[.".toCharArray()) CHAR_CLASSES[c] = WORD;
+        for (char c : " \t\n\r\f".toCharArray()) CHAR_CLASSES[c] = SPACE;
+        CHAR_CLASSES['"'] = QUOTE;
+        CHAR_CLASSES['/'] = SLASH;
+        CHAR_CLASSES['-'] = MINUS;
+    }
+
+    private static final String[] KEYWORDS = {
+            "public", "private", "protected", "final", "static", "synchronized", "volatile", "transient", "native",
+            "abstract", "strictfp", "synthetic", "mandated", "bridge", "varargs", "enum", "deprecated",
+            "class", "interface", "@interface", "extends", "implements", "throws", "default"
+    };
+
+    private static final String[] DIRECTIVES = {
+            "LINENUMBER", "FRAME", "LOCALVARIABLE", "MAXSTACK", "MAXLOCALS", "TRYCATCHBLOCK", "INNERCLASS",
+            "OUTERCLASS", "ATTRIBUTE", "PARAMETER"
+    };
+
+    // open addressing table of the words with a dedicated token type, the size is a power of two
+    private static final int TABLE_SIZE = 1024;
+    private static final String[] WORDS = new String[TABLE_SIZE];
+    private static final IElementType[] WORD_TYPES = new IElementType[TABLE_SIZE];
+
+    static {
+        for (String opcode : Printer.OPCODES) {
+            if (opcode.length() > 0) addWord(opcode, BytecodeTokenTypes.OPCODE);
+        }
+        for (String keyword : KEYWORDS) {
+            addWord(keyword, BytecodeTokenTypes.KEYWORD);
+        }
+        for (String directive : DIRECTIVES) {
+            addWord(directive, BytecodeTokenTypes.DIRECTIVE);
+        }
+    }
+
+    private CharSequence buffer;
+    private int bufferEnd;
+    private int tokenStart;
+    private int tokenEnd;
+    private IElementType tokenType;
+
+    public void start(@NotNull final CharSequence buffer, final int startOffset, final int endOffset, final int initialState) {
+        this.buffer = buffer;
+        this.bufferEnd = endOffset;
+        this.tokenEnd = startOffset;
+        advance();
+    }
+
+    public int getState() {
+        return 0;
+    }
+
+    public IElementType getTokenType() {
+        return tokenType;
+    }
+
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    public void advance() {
+        tokenStart = tokenEnd;
+        if (tokenStart >= bufferEnd) {
+            tokenType = null;
+            return;
+        }
+        final CharSequence buffer = this.buffer;
+        int pos = tokenStart;
+        final char first = buffer.charAt(pos++);
+        switch (charClass(first)) {
+            case SPACE:
+                while (pos < bufferEnd && charClass(buffer.charAt(pos)) == SPACE) pos++;
+                tokenType = TokenType.WHITE_SPACE;
+                break;
+            case QUOTE:
+                while (pos < bufferEnd) {
+                    final char c = buffer.charAt(pos);
+                    if (c == '\n') break;
+                    pos++;
+                    if (c == '"') break;
+                    if (c == '\\' && pos < bufferEnd && buffer.charAt(pos) != '\n') pos++;
+                }
+                tokenType = BytecodeTokenTypes.STRING;
+                break;
+            case SLASH:
+                if (pos < bufferEnd && buffer.charAt(pos) == '/') {
+                    while (pos < bufferEnd && buffer.charAt(pos) != '\n') pos++;
+                    tokenType = BytecodeTokenTypes.COMMENT;
+                } else {
+                    pos = skipWord(buffer, pos);
+                    tokenType = BytecodeTokenTypes.DESCRIPTOR;
+                }
+                break;
+            case MINUS:
+                if (pos < bufferEnd && charClass(buffer.charAt(pos)) == DIGIT) {
+                    pos = skipWord(buffer, pos);
+                    tokenType = BytecodeTokenTypes.NUMBER;
+                } else {
+                    tokenType = BytecodeTokenTypes.PUNCTUATION;
+                }
+                break;
+            case DIGIT:
+                // also takes the suffixes of long, float and double constants
+                pos = skipWord(buffer, pos);
+                tokenType = BytecodeTokenTypes.NUMBER;
+                break;
+            case WORD:
+                pos = skipWord(buffer, pos);
+                tokenType = wordType(buffer, tokenStart, pos);
+                break;
+            default:
+                // annotations are printed as @Ldesc; and @interface is a keyword
+                if (first == '@' && pos < bufferEnd && charClass(buffer.charAt(pos)) == WORD) {
+                    pos = skipWord(buffer, pos);
+                    tokenType = wordType(buffer, tokenStart, pos);
+                } else {
+                    tokenType = BytecodeTokenTypes.PUNCTUATION;
+                }
+        }
+        tokenEnd = pos;
+    }
+
+    @NotNull
+    public CharSequence getBufferSequence() {
+        return buffer;
+    }
+
+    public int getBufferEnd() {
+        return bufferEnd;
+    }
+
+    private static byte charClass(final char c) {
+        // other alphabets may appear in names
+        return c < 128 ? CHAR_CLASSES[c] : WORD;
+    }
+
+    private int skipWord(final CharSequence buffer, int pos) {
+        while (pos < bufferEnd) {
+            final char c = buffer.charAt(pos);
+            // a method descriptor is a token of its own, distinct from the method name
+            if (c == '(') break;
+            final byte charClass = charClass(c);
+            // slashes and minus signs can't start a word but separate the packages of internal names, or stand in
+            // exponents and signatures
+            if (charClass != WORD && charClass != DIGIT && charClass != SLASH && charClass != MINUS) break;
+            pos++;
+        }
+        return pos;
+    }
+
+    private static IElementType wordType(final CharSequence buffer, final int start, final int end) {
+        final IElementType type = lookup(buffer, start, end);
+        if (type != null) return type;
+        final char first = buffer.charAt(start);
+        if (first == 'L' && end - start > 1) {
+            int pos = start + 1;
+            while (pos < end && charClass(buffer.charAt(pos)) == DIGIT) pos++;
+            if (pos == end) return BytecodeTokenTypes.LABEL;
+        }
+        if (first == '@' || first == '(' || first == '[' && end - start > 1) return BytecodeTokenTypes.DESCRIPTOR;
+        for (int pos = start; pos < end; pos++) {
+            final char c = buffer.charAt(pos);
+            if (c == '/' || c == ';') return BytecodeTokenTypes.DESCRIPTOR;
+        }
+        return BytecodeTokenTypes.IDENTIFIER;
+    }
+
+    private static void addWord(final String word, final IElementType type) {
+        int slot = hash(word, 0, word.length()) & (TABLE_SIZE - 1);
+        while (WORDS[slot] != null) {
+            if (WORDS[slot].equals(word)) return;
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        WORDS[slot] = word;
+        WORD_TYPES[slot] = type;
+    }
+
+    private static IElementType lookup(final CharSequence buffer, final int start, final int end) {
+        final int length = end - start;
+        int slot = hash(buffer, start, end) & (TABLE_SIZE - 1);
+        for (String word = WORDS[slot]; word != null; word = WORDS[slot = (slot + 1) & (TABLE_SIZE - 1)]) {
+            if (word.length() == length && regionEquals(word, buffer, start)) return WORD_TYPES[slot];
+        }
+        return null;
+    }
+
+    private static boolean regionEquals(final String word, final CharSequence buffer, final int start) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != buffer.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    private static int hash(final CharSequence text, final int start, final int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        // spreads the bits of the last characters, which are the ones opcodes differ by
+        return hash ^ (hash >>> 10);
+    }
+}
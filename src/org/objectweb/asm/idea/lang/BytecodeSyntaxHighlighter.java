@@ -0,0 +1,72 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea.lang;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.editor.SyntaxHighlighterColors;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.fileTypes.SyntaxHighlighterBase;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Highlights the bytecode view, reusing the colors of the corresponding Java tokens.
+ */
+public class BytecodeSyntaxHighlighter extends SyntaxHighlighterBase {
+    public static final TextAttributesKey OPCODE = TextAttributesKey.createTextAttributesKey(
+            "BYTECODE_OPCODE", SyntaxHighlighterColors.KEYWORD.getDefaultAttributes());
+    public static final TextAttributesKey KEYWORD = TextAttributesKey.createTextAttributesKey(
+            "BYTECODE_KEYWORD", SyntaxHighlighterColors.KEYWORD.getDefaultAttributes());
+    public static final TextAttributesKey DIRECTIVE = TextAttributesKey.createTextAttributesKey(
+            "BYTECODE_DIRECTIVE", SyntaxHighlighterColors.DOC_COMMENT_TAG.getDefaultAttributes());
+    public static final TextAttributesKey LABEL = TextAttributesKey.createTextAttributesKey(
+            "BYTECODE_LABEL", SyntaxHighlighterColors.DOC_COMMENT_MARKUP.getDefaultAttributes());
+    public static final TextAttributesKey NUMBER = TextAttributesKey.createTextAttributesKey(
+            "BYTECODE_NUMBER", SyntaxHighlighterColors.NUMBER.getDefaultAttributes());
+    public static final TextAttributesKey STRING = TextAttributesKey.createTextAttributesKey(
+            "BYTECODE_STRING", SyntaxHighlighterColors.STRING.getDefaultAttributes());
+    public static final TextAttributesKey COMMENT = TextAttributesKey.createTextAttributesKey(
+            "BYTECODE_COMMENT", SyntaxHighlighterColors.LINE_COMMENT.getDefaultAttributes());
+
+    private static final Map<IElementType, TextAttributesKey> ATTRIBUTES = new HashMap<IElementType, TextAttributesKey>();
+
+    static {
+        ATTRIBUTES.put(BytecodeTokenTypes.OPCODE, OPCODE);
+        ATTRIBUTES.put(BytecodeTokenTypes.KEYWORD, KEYWORD);
+        ATTRIBUTES.put(BytecodeTokenTypes.DIRECTIVE, DIRECTIVE);
+        ATTRIBUTES.put(BytecodeTokenTypes.LABEL, LABEL);
+        ATTRIBUTES.put(BytecodeTokenTypes.NUMBER, NUMBER);
+        ATTRIBUTES.put(BytecodeTokenTypes.STRING, STRING);
+        ATTRIBUTES.put(BytecodeTokenTypes.COMMENT, COMMENT);
+    }
+
+    @NotNull
+    public Lexer getHighlightingLexer() {
+        return new BytecodeLexer();
+    }
+
+    @NotNull
+    public TextAttributesKey[] getTokenHighlights(final IElementType tokenType) {
+        return pack(ATTRIBUTES.get(tokenType));
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *
+ *  Copyright 2011 Cédric Champeau
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ * /
+ */
+
+
+package org.objectweb.asm.idea.lang;
+
+import com.intellij.psi.tree.IElementType;
+
+/**
+ * Tokens of the bytecode view, see {@link BytecodeLexer}.
+ */
+public interface BytecodeTokenTypes {
+    IElementType OPCODE = new IElementType("OPCODE", BytecodeLanguage.INSTANCE);
+    // access flags and the words of class and method headers
+    IElementType KEYWORD = new IElementType("KEYWORD", BytecodeLanguage.INSTANCE);
+    // LINENUMBER, FRAME, LOCALVARIABLE, MAXSTACK... which don't stand for instructions
+    IElementType DIRECTIVE = new IElementType("DIRECTIVE", BytecodeLanguage.INSTANCE);
+    IElementType LABEL = new IElementType("LABEL", BytecodeLanguage.INSTANCE);
+    // internal names, type and method descriptors
+    IElementType DESCRIPTOR = new IElementType("DESCRIPTOR", BytecodeLanguage.INSTANCE);
+    IElementType IDENTIFIER = new IElementType("IDENTIFIER", BytecodeLanguage.INSTANCE);
+    IElementType NUMBER = new IElementType("NUMBER", BytecodeLanguage.INSTANCE);
+    IElementType STRING = new IElementType("STRING", BytecodeLanguage.INSTANCE);
+    IElementType COMMENT = new IElementType("COMMENT", BytecodeLanguage.INSTANCE);
+    IElementType PUNCTUATION = new IElementType("PUNCTUATION", BytecodeLanguage.INSTANCE);
+}